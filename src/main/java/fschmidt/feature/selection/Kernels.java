@@ -0,0 +1,73 @@
+package fschmidt.feature.selection;
+
+// ----------------------------------------------
+//  KERNELS.
+// ----------------------------------------------
+// The hot inner loops of the correlation and the
+// histogram distance computations. This is the
+// Java 11 version, every kernel is a plain scalar
+// loop (ScalarKernels). The multi-release jar
+// contains a JDK 21 version of this class (see
+// src/main/java21) that switches to the Vector API
+// if the JVM runs with
+//
+//     --add-modules jdk.incubator.vector
+//
+// and falls back to the same scalar loops
+// otherwise. Callers only ever see this class.
+//
+// @author fschmidt
+//
+public enum Kernels {
+    ;
+
+    public static boolean isVectorized() {
+        return false;
+    }
+
+    /*
+        sum a[s] * b[s] for s in [from, to).
+     */
+    public static double dot(double[] a, double[] b, int from, int to) {
+        return ScalarKernels.dot(a, b, from, to);
+    }
+
+    public static double dot(double[] a, double[] b) {
+        return ScalarKernels.dot(a, b, 0, a.length);
+    }
+
+    /*
+        Raw moments {sum x, sum y, sum x^2, sum y^2, sum xy} of two series.
+     */
+    public static double[] moments(double[] x, double[] y) {
+        return ScalarKernels.moments(x, y);
+    }
+
+    /*
+        sum |a[s] - b[s]|.
+     */
+    public static double absoluteDifferenceSum(double[] a, double[] b) {
+        return ScalarKernels.absoluteDifferenceSum(a, b);
+    }
+
+    /*
+        sum (a[s] - b[s])^2.
+     */
+    public static double squaredDifferenceSum(double[] a, double[] b) {
+        return ScalarKernels.squaredDifferenceSum(a, b);
+    }
+
+    /*
+        sum sqrt(a[s] * b[s]).
+     */
+    public static double sqrtProductSum(double[] a, double[] b) {
+        return ScalarKernels.sqrtProductSum(a, b);
+    }
+
+    /*
+        sum a[s] * ln(a[s] / b[s]) over all s with a[s] != 0 and b[s] != 0.
+     */
+    public static double relativeEntropy(double[] a, double[] b) {
+        return ScalarKernels.relativeEntropy(a, b);
+    }
+}
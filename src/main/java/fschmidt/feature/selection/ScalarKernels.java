@@ -0,0 +1,74 @@
+package fschmidt.feature.selection;
+
+// ----------------------------------------------
+//  SCALAR KERNELS.
+// ----------------------------------------------
+// Plain loop implementations behind Kernels, also
+// the fallback of the vectorised JDK 21 version.
+//
+// @author fschmidt
+//
+enum ScalarKernels {
+    ;
+
+    static double dot(double[] a, double[] b, int from, int to) {
+        double sum = 0.0;
+        for (int s = from; s < to; s++) {
+            sum += a[s] * b[s];
+        }
+        return sum;
+    }
+
+    static double[] moments(double[] xs, double[] ys) {
+        double sx = 0.0;
+        double sy = 0.0;
+        double sxx = 0.0;
+        double syy = 0.0;
+        double sxy = 0.0;
+        for (int i = 0; i < xs.length; ++i) {
+            double x = xs[i];
+            double y = ys[i];
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            syy += y * y;
+            sxy += x * y;
+        }
+        return new double[]{sx, sy, sxx, syy, sxy};
+    }
+
+    static double absoluteDifferenceSum(double[] a, double[] b) {
+        double dist = 0.0;
+        for (int i = 0; i < a.length; ++i) {
+            dist += Math.abs(a[i] - b[i]);
+        }
+        return dist;
+    }
+
+    static double squaredDifferenceSum(double[] a, double[] b) {
+        double dist = 0.0;
+        for (int i = 0; i < a.length; ++i) {
+            double diff = a[i] - b[i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    static double sqrtProductSum(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.sqrt(a[i] * b[i]);
+        }
+        return sum;
+    }
+
+    static double relativeEntropy(double[] a, double[] b) {
+        double divergence = 0.0;
+        for (int i = 0; i < a.length; ++i) {
+            if (a[i] != 0 && b[i] != 0) {
+                divergence += a[i] * Math.log(a[i] / b[i]);
+            }
+        }
+        return divergence;
+    }
+}
@@ -3,7 +3,11 @@ package fschmidt.feature.selection;
 import fschmidt.feature.selection.Datasets.Dataset;
 import fschmidt.feature.selection.Utils.Self;
 import fschmidt.feature.selection.correlation.CorrelationAlgorithm;
+import fschmidt.feature.selection.correlation.CorrelationCache;
+import fschmidt.feature.selection.correlation.CorrelationMatrix;
 import fschmidt.feature.selection.correlation.CorrelationMetricReduction;
+import fschmidt.feature.selection.correlation.SimHashCorrelation;
+import fschmidt.feature.selection.graph.CliqueEngines;
 import fschmidt.feature.selection.graph.UndirectedGraph;
 import fschmidt.feature.selection.graph.WeightedEdge;
 import fschmidt.feature.selection.graph.WeightedVertex;
@@ -39,16 +43,56 @@ public enum Selectors {
         return new WekaFeatureSelection(ranker, new GainRatioAttributeEval());
     }
 
+    /*
+        Pearson graph with the matrices in the precision, FLOAT32 halves the memory of the triangle.
+     */
+    public static GraphFeatureSelection newGraph(double _filterProportion, double _maxCorrelation, boolean newFilter,
+                                                CliqueEngines cliqueEngine, CorrelationCache correlationCache,
+                                                CorrelationMatrix.Precision precision) {
+        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, newFilter, cliqueEngine, correlationCache,
+                CorrelationAlgorithm.Pearson, precision);
+    }
+
+    public static GraphFeatureSelection newGraph(double _filterProportion, double _maxCorrelation, boolean newFilter,
+                                                CliqueEngines cliqueEngine, CorrelationCache correlationCache) {
+        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, newFilter, cliqueEngine, correlationCache,
+                CorrelationAlgorithm.Pearson);
+    }
+
+    /*
+        For very wide data: only SimHash candidate pairs are correlated exactly, the graph is cut at _maxCorrelation.
+        The banding finds a pair at |r| = _maxCorrelation with probability recall, pairs beyond it more likely.
+     */
+    public static GraphFeatureSelection newGraphSimHash(double _filterProportion, double _maxCorrelation, double recall,
+                                                        boolean newFilter, CliqueEngines cliqueEngine) {
+        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, newFilter, cliqueEngine, null,
+                new SimHashCorrelation(_maxCorrelation, recall, 42L));
+    }
+
+    public static GraphFeatureSelection newGraphSimHash(double _filterProportion, double _maxCorrelation, boolean newFilter,
+                                                        CliqueEngines cliqueEngine) {
+        return newGraphSimHash(_filterProportion, _maxCorrelation, 0.99, newFilter, cliqueEngine);
+    }
+
+    public static GraphFeatureSelection newGraph(double _filterProportion, double _maxCorrelation, boolean newFilter,
+                                                CliqueEngines cliqueEngine) {
+        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, newFilter, cliqueEngine, null,
+                CorrelationAlgorithm.Pearson);
+    }
+
     public static GraphFeatureSelection newGraph(double _filterProportion, double _maxCorrelation, boolean newFilter) {
-        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, newFilter);
+        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, newFilter, CliqueEngines.BRON_KERBOSCH_PIVOTING, null,
+                CorrelationAlgorithm.Pearson);
     }
 
     public static GraphFeatureSelection newGraph(double _filterProportion, double _maxCorrelation) {
-        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, false);
+        return new GraphFeatureSelection(_filterProportion, _maxCorrelation, false, CliqueEngines.BRON_KERBOSCH_PIVOTING, null,
+                CorrelationAlgorithm.Pearson);
     }
 
     public static GraphFeatureSelection newGraphDefault() {
-        return new GraphFeatureSelection(0.3, 0.9, false);
+        return new GraphFeatureSelection(0.3, 0.9, false, CliqueEngines.BRON_KERBOSCH_PIVOTING, null,
+                CorrelationAlgorithm.Pearson);
     }
 
     public static AllFeatureSelection newAll() {
@@ -142,11 +186,28 @@ public enum Selectors {
         final double filterProportion;
         final double maxCorrelation;
         final boolean newFilter;
+        final CliqueEngines cliqueEngine;
+        final CorrelationCache correlationCache;
+        final CorrelationAlgorithm.Correlation keyCorrelation;
+        final CorrelationMatrix.Precision precision;
+
+        private GraphFeatureSelection(double _filterProportion, double _maxCorrelation, boolean newFilter,
+                                      CliqueEngines _cliqueEngine, CorrelationCache _correlationCache,
+                                      CorrelationAlgorithm.Correlation _keyCorrelation) {
+            this(_filterProportion, _maxCorrelation, newFilter, _cliqueEngine, _correlationCache, _keyCorrelation,
+                    CorrelationMatrix.Precision.FLOAT64);
+        }
 
-        private GraphFeatureSelection(double _filterProportion, double _maxCorrelation, boolean newFilter) {
+        private GraphFeatureSelection(double _filterProportion, double _maxCorrelation, boolean newFilter,
+                                      CliqueEngines _cliqueEngine, CorrelationCache _correlationCache,
+                                      CorrelationAlgorithm.Correlation _keyCorrelation, CorrelationMatrix.Precision _precision) {
             filterProportion = _filterProportion;
             maxCorrelation = _maxCorrelation;
             this.newFilter = newFilter;
+            cliqueEngine = _cliqueEngine;
+            correlationCache = _correlationCache;
+            keyCorrelation = _keyCorrelation;
+            precision = _precision;
         }
 
         public String[] apply(Dataset dataset) {
@@ -157,7 +218,9 @@ public enum Selectors {
                     new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), filterProportion, newFilter)
                             .run(header, values, ground);
             var recommended =
-                    new CorrelationMetricReduction(CorrelationMetricReduction.Pearson, maxCorrelation)
+                    new CorrelationMetricReduction(keyCorrelation, maxCorrelation, cliqueEngine,
+                            correlationCache)
+                            .precision(precision)
                             .run(binTargetRankings, header, values);
 
             // TODO
@@ -0,0 +1,251 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.Kernels;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  BOUNDED CORRELATION.
+// ----------------------------------------------
+// Pearson matrix for a fixed threshold that stops
+// working on a pair as soon as it is clear that
+// |r| > threshold, because the reduction deletes
+// that edge anyway. The standardised columns are
+// multiplied chunk by chunk; after k chunks the
+// partial sum P and the remaining squared mass
+// Rx, Ry of both columns bound the correlation by
+// Cauchy-Schwarz:
+//
+//     P - sqrt(Rx Ry) <= r <= P + sqrt(Rx Ry)
+//
+// Once |P| - sqrt(Rx Ry) > threshold the pair is
+// decided. Like the gram kernel, tiles of features
+// run in parallel and walk through the chunks
+// together, decided pairs drop out of the tile.
+// Optionally (confidence < 1) a Fisher-z interval
+// of the Pearson correlation of the rows seen so
+// far may decide earlier; that assumes the row
+// order is random. Surviving pairs
+// (|r| <= threshold) are always summed over all
+// rows and exact; decided pairs store a value of
+// the right sign with |value| > threshold (the
+// bound respectively the prefix estimate).
+//
+// @author fschmidt
+//
+public class BoundedCorrelation implements CorrelationAlgorithm.ThresholdedCorrelation, SharedColumnsCorrelation {
+
+    // features per tile side, rows per chunk between two bound checks
+    private static final int BLOCK = 32;
+    private static final int CHUNK = 256;
+    // rows before the first Fisher-z test
+    private static final int MINIMUM_ROWS = 2 * CHUNK;
+
+    private final double threshold;
+    private final double confidence;
+    private final double quantile;
+
+    /*
+        Only the deterministic Cauchy-Schwarz bound, edge decisions are exact.
+     */
+    public BoundedCorrelation(double threshold) {
+        this.threshold = threshold;
+        this.confidence = 1.0;
+        this.quantile = Double.POSITIVE_INFINITY;
+    }
+
+    /*
+        Additionally stops when the Fisher-z interval of the rows seen so far lies above the threshold.
+     */
+    public BoundedCorrelation(double threshold, double confidence) {
+        if (confidence <= 0.0 || confidence >= 1.0) {
+            throw new IllegalArgumentException("confidence must be in (0, 1), got " + confidence);
+        }
+        this.threshold = threshold;
+        this.confidence = confidence;
+        this.quantile = new NormalDistribution().inverseCumulativeProbability(1.0 - (1.0 - confidence) / 2.0);
+    }
+
+    public double correlation(double[] x, double[] y) {
+        return new PearsonsCorrelation().correlation(x, y);
+    }
+
+    public double threshold() {
+        return threshold;
+    }
+
+    public Matrix matrix(String[] names, double[][] columns) {
+        return matrix(names, new SharedColumns(columns));
+    }
+
+    public Matrix matrix(String[] names, SharedColumns shared) {
+        double[][] z = shared.standardised();
+        int d = z.length;
+        int n = shared.numberOfSamples();
+        int chunks = (n + CHUNK - 1) / CHUNK;
+
+        // per column and chunk boundary k: squared mass after k chunks, sum and sum of squares before k chunks
+        double[][] remaining = new double[d][chunks + 1];
+        double[][] prefixSums = new double[d][chunks + 1];
+        double[][] prefixSquares = new double[d][chunks + 1];
+        IntStream.range(0, d).parallel().forEach(c -> {
+            for (int k = chunks - 1; k >= 0; k--) {
+                double squares = 0.0;
+                for (int s = k * CHUNK; s < Math.min(n, (k + 1) * CHUNK); s++) {
+                    squares += z[c][s] * z[c][s];
+                }
+                remaining[c][k] = remaining[c][k + 1] + squares;
+            }
+            for (int k = 0; k < chunks; k++) {
+                double sum = 0.0;
+                for (int s = k * CHUNK; s < Math.min(n, (k + 1) * CHUNK); s++) {
+                    sum += z[c][s];
+                }
+                prefixSums[c][k + 1] = prefixSums[c][k] + sum;
+                prefixSquares[c][k + 1] = remaining[c][0] - remaining[c][k + 1];
+            }
+        });
+
+        Matrix matrix = new Matrix(names);
+        AtomicLong processedRows = new AtomicLong();
+        int blocks = (d + BLOCK - 1) / BLOCK;
+        List<int[]> tiles = new ArrayList<>();
+        for (int bi = 0; bi < blocks; bi++) {
+            for (int bj = bi; bj < blocks; bj++) {
+                tiles.add(new int[]{bi * BLOCK, bj * BLOCK});
+            }
+        }
+        tiles.parallelStream().forEach(tile -> {
+            int i0 = tile[0];
+            int i1 = Math.min(i0 + BLOCK, d);
+            int j0 = tile[1];
+            int j1 = Math.min(j0 + BLOCK, d);
+            double[] partials = new double[BLOCK * BLOCK];
+            double[] decided = new double[BLOCK * BLOCK];
+            Arrays.fill(decided, Double.NaN);
+            // pairs of the tile that are still summed up, NaN columns never are
+            int[] active = new int[BLOCK * BLOCK];
+            int numberOfActive = 0;
+            for (int i = i0; i < i1; i++) {
+                for (int j = Math.max(j0, i + 1); j < j1; j++) {
+                    if (!Double.isNaN(z[i][0]) && !Double.isNaN(z[j][0])) {
+                        active[numberOfActive++] = (i - i0) * BLOCK + (j - j0);
+                    }
+                }
+            }
+            long rows = 0;
+            for (int k = 0; k < chunks && numberOfActive > 0; k++) {
+                int from = k * CHUNK;
+                int to = Math.min(n, from + CHUNK);
+                rows += (long) numberOfActive * (to - from);
+                int stillActive = 0;
+                for (int a = 0; a < numberOfActive; a++) {
+                    int slot = active[a];
+                    int i = i0 + slot / BLOCK;
+                    int j = j0 + slot % BLOCK;
+                    double partial = partials[slot] += Kernels.dot(z[i], z[j], from, to);
+                    if (k + 1 < chunks) {
+                        double bound = Math.sqrt(remaining[i][k + 1] * remaining[j][k + 1]);
+                        if (Math.abs(partial) - bound > threshold) {
+                            decided[slot] = Math.signum(partial) * (Math.abs(partial) - bound);
+                            continue;
+                        }
+                        if (to >= MINIMUM_ROWS && quantile < Double.POSITIVE_INFINITY) {
+                            double estimate = prefixCorrelation(partial, prefixSums[i][k + 1], prefixSums[j][k + 1],
+                                    prefixSquares[i][k + 1], prefixSquares[j][k + 1], to);
+                            if (confidentlyAbove(estimate, to)) {
+                                decided[slot] = estimate;
+                                continue;
+                            }
+                        }
+                    }
+                    active[stillActive++] = slot;
+                }
+                numberOfActive = stillActive;
+            }
+            for (int i = i0; i < i1; i++) {
+                for (int j = Math.max(j0, i + 1); j < j1; j++) {
+                    int slot = (i - i0) * BLOCK + (j - j0);
+                    if (Double.isNaN(z[i][0]) || Double.isNaN(z[j][0])) {
+                        matrix.set(i, j, Double.NaN);
+                    } else if (Double.isNaN(decided[slot])) {
+                        matrix.set(i, j, Math.max(-1.0, Math.min(1.0, partials[slot])));
+                    } else {
+                        matrix.set(i, j, decided[slot]);
+                        matrix.markDecided(i, j);
+                    }
+                }
+            }
+            processedRows.addAndGet(rows);
+        });
+        matrix.processedFraction = matrix.getNumberOfPairs() == 0 || n == 0
+                ? 1.0 : processedRows.get() / ((double) matrix.getNumberOfPairs() * n);
+        System.out.println(String.format("Decided %s of %s pairs early, processed %.1f%% of the rows.",
+                matrix.getNumberOfEarlyDecisions(), matrix.getNumberOfPairs(), 100.0 * matrix.processedFraction));
+        return matrix;
+    }
+
+    // Pearson correlation of the first m rows from sums of the standardised values
+    private static double prefixCorrelation(double sumXY, double sumX, double sumY, double sumXX, double sumYY, int m) {
+        double covariance = sumXY - sumX * sumY / m;
+        double varianceX = sumXX - sumX * sumX / m;
+        double varianceY = sumYY - sumY * sumY / m;
+        return covariance / Math.sqrt(varianceX * varianceY);
+    }
+
+    // is the whole Fisher-z interval of |r| above the threshold?
+    private boolean confidentlyAbove(double r, int m) {
+        if (Double.isNaN(r)) {
+            return false;
+        }
+        double clamped = Math.max(-1.0 + 1e-12, Math.min(1.0 - 1e-12, Math.abs(r)));
+        double z = 0.5 * Math.log((1.0 + clamped) / (1.0 - clamped));
+        return Math.tanh(z - quantile / Math.sqrt(m - 3)) > threshold;
+    }
+
+    public String toString() {
+        return "boundedPearson(" + threshold + (quantile < Double.POSITIVE_INFINITY ? ", " + confidence : "") + ")";
+    }
+
+    // ----------------------------------------------
+    //  BOUNDED MATRIX.
+    // ----------------------------------------------
+    // Correlation matrix that knows which pairs were
+    // decided early (not exact) and how much of the
+    // row work was actually done.
+    public static class Matrix extends CorrelationMatrix {
+
+        private final BitSet decided = new BitSet();
+        private double processedFraction;
+
+        private Matrix(String[] names) {
+            super(names);
+        }
+
+        private synchronized void markDecided(int i, int j) {
+            decided.set(index(i, j));
+        }
+
+        public synchronized boolean isExact(int i, int j) {
+            return i == j || !decided.get(index(i, j));
+        }
+
+        public synchronized int getNumberOfEarlyDecisions() {
+            return decided.cardinality();
+        }
+
+        /*
+            Share of the pairs x rows products that were computed.
+         */
+        public double getProcessedFraction() {
+            return processedFraction;
+        }
+    }
+}
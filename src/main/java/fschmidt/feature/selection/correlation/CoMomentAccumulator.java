@@ -0,0 +1,149 @@
+package fschmidt.feature.selection.correlation;
+
+import java.util.Arrays;
+
+// ----------------------------------------------
+//  CO-MOMENT ACCUMULATOR.
+// ----------------------------------------------
+// Sufficient statistics for the Pearson matrix of
+// a stream of rows: the count, the means and the
+// co-moments C_ij = sum (x_i - mean_i)(x_j - mean_j)
+// of all pairs. Rows are added with Welford's
+// update in O(d^2), partial accumulators (threads,
+// shards, time windows) are combined with Chan's
+// parallel formula, and the correlation matrix can
+// be queried at any time without looking at old
+// rows again. Not thread-safe, give every thread
+// its own accumulator and merge them afterwards.
+//
+// @author fschmidt
+//
+public class CoMomentAccumulator {
+
+    private final String[] names;
+    private final double[] means;
+    // packed upper triangle including the diagonal (sums of squares)
+    private final double[] coMoments;
+    private final double[] delta;
+    private long count;
+
+    public CoMomentAccumulator(String[] names) {
+        this.names = names.clone();
+        this.means = new double[names.length];
+        this.coMoments = new double[names.length * (names.length + 1) / 2];
+        this.delta = new double[names.length];
+    }
+
+    /*
+        Adds one row, values in the order of the names.
+     */
+    public CoMomentAccumulator add(double[] row) {
+        if (row.length != names.length) {
+            throw new IllegalArgumentException("expected " + names.length + " values, got " + row.length);
+        }
+        count++;
+        for (int i = 0; i < row.length; i++) {
+            delta[i] = row[i] - means[i];
+            means[i] += delta[i] / count;
+        }
+        // (x_i - old mean_i)(x_j - new mean_j) = delta_i * delta_j * (n - 1) / n
+        double scale = (count - 1) / (double) count;
+        int k = 0;
+        for (int i = 0; i < row.length; i++) {
+            double di = delta[i] * scale;
+            for (int j = i; j < row.length; j++) {
+                coMoments[k++] += di * delta[j];
+            }
+        }
+        return this;
+    }
+
+    /*
+        Adds the given columns of a (wider) row, e.g. a row of the dataset with header indices.
+     */
+    public CoMomentAccumulator add(double[] row, int[] indices) {
+        double[] values = new double[indices.length];
+        for (int c = 0; c < indices.length; c++) {
+            values[c] = row[indices[c]];
+        }
+        return add(values);
+    }
+
+    /*
+        Adds all statistics of other to this accumulator (Chan et al.), other is unchanged.
+     */
+    public CoMomentAccumulator merge(CoMomentAccumulator other) {
+        if (!Arrays.equals(names, other.names)) {
+            throw new IllegalArgumentException("accumulators over different features cannot be merged");
+        }
+        if (other.count == 0) {
+            return this;
+        }
+        long total = count + other.count;
+        double weight = count * (double) other.count / total;
+        for (int i = 0; i < names.length; i++) {
+            delta[i] = other.means[i] - means[i];
+        }
+        int k = 0;
+        for (int i = 0; i < names.length; i++) {
+            for (int j = i; j < names.length; j++) {
+                coMoments[k] += other.coMoments[k] + delta[i] * delta[j] * weight;
+                k++;
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            means[i] += delta[i] * other.count / total;
+        }
+        count = total;
+        return this;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean(int i) {
+        return count == 0 ? Double.NaN : means[i];
+    }
+
+    /*
+        Unbiased sample covariance of features i and j.
+     */
+    public double getCovariance(int i, int j) {
+        return count < 2 ? Double.NaN : coMoments[index(i, j)] / (count - 1);
+    }
+
+    /*
+        Pearson correlation matrix of all rows seen so far. Constant features give NaN.
+     */
+    public CorrelationMatrix pearson() {
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        for (int i = 0; i < names.length; i++) {
+            double sii = coMoments[index(i, i)];
+            for (int j = i + 1; j < names.length; j++) {
+                double sjj = coMoments[index(j, j)];
+                double r = sii > 0.0 && sjj > 0.0 ? coMoments[index(i, j)] / Math.sqrt(sii * sjj) : Double.NaN;
+                matrix.set(i, j, Math.max(-1.0, Math.min(1.0, r)));
+            }
+        }
+        return matrix;
+    }
+
+    private int index(int i, int j) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return i * names.length - i * (i - 1) / 2 + (j - i);
+    }
+
+    @Override
+    public String toString() {
+        return "CoMomentAccumulator = features: " + names.length + ", rows: " + count;
+    }
+}
@@ -0,0 +1,293 @@
+package fschmidt.feature.selection.correlation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ----------------------------------------------
+//  COLUMN STORE.
+// ----------------------------------------------
+// Disk-backed samples for data that does not fit
+// into the heap. Rows are appended once through a
+// Writer and stored in chunks of rowsPerChunk
+// samples; within a chunk the values are column
+// major, so any range of features of one chunk is
+// a single contiguous read. Out-of-core engines
+// (CorrelationMatrices.pearson(ColumnStore, Path))
+// stream through the chunks and only ever hold a
+// block of features of one chunk in memory, read
+// through one direct buffer per thread.
+//
+// File layout (little endian):
+//  int magic, int version, int features,
+//  int rows per chunk, long samples,
+//  per feature: int length, UTF-8 name,
+//  padding to 8 bytes, chunks of
+//  double[features][rows in chunk]
+//
+// @author fschmidt
+//
+public class ColumnStore implements Closeable {
+
+    private static final int MAGIC = 0x434F4C53; // "COLS"
+    private static final int VERSION = 1;
+    // default chunk size over all features
+    private static final long CHUNK_BYTES = 1L << 25;
+
+    private final String[] names;
+    private final int rowsPerChunk;
+    private final long numberOfSamples;
+    private final long dataOffset;
+    private final FileChannel channel;
+
+    private ColumnStore(String[] names, int rowsPerChunk, long numberOfSamples, long dataOffset, FileChannel channel) {
+        this.names = names;
+        this.rowsPerChunk = rowsPerChunk;
+        this.numberOfSamples = numberOfSamples;
+        this.dataOffset = dataOffset;
+        this.channel = channel;
+    }
+
+    /*
+        Writer with chunks of about 32 MiB.
+     */
+    public static Writer create(Path file, String[] names) throws IOException {
+        return create(file, names, (int) Math.max(1, CHUNK_BYTES / Double.BYTES / Math.max(1, names.length)));
+    }
+
+    public static Writer create(Path file, String[] names, int rowsPerChunk) throws IOException {
+        if (rowsPerChunk < 1) {
+            throw new IllegalArgumentException("rowsPerChunk must be positive, got " + rowsPerChunk);
+        }
+        return new Writer(file, names.clone(), rowsPerChunk);
+    }
+
+    /*
+        Writes all rows (e.g. Dataset.values()) and opens the store.
+     */
+    public static ColumnStore write(Path file, String[] names, Iterable<double[]> rows) throws IOException {
+        try (Writer writer = create(file, names)) {
+            for (double[] row : rows) {
+                writer.add(row);
+            }
+        }
+        return open(file);
+    }
+
+    public static ColumnStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer fixed = ByteBuffer.allocate(4 * Integer.BYTES + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, fixed, 0);
+            fixed.flip();
+            if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+                throw new IOException("not a column store: " + file);
+            }
+            String[] names = new String[fixed.getInt()];
+            int rowsPerChunk = fixed.getInt();
+            long numberOfSamples = fixed.getLong();
+            long position = fixed.capacity();
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < names.length; i++) {
+                length.clear();
+                readFully(channel, length, position);
+                ByteBuffer name = ByteBuffer.allocate(length.getInt(0));
+                readFully(channel, name, position + Integer.BYTES);
+                names[i] = new String(name.array(), StandardCharsets.UTF_8);
+                position += Integer.BYTES + name.capacity();
+            }
+            long dataOffset = align(position);
+            if (channel.size() != dataOffset + numberOfSamples * names.length * Double.BYTES) {
+                throw new IOException("truncated column store: " + file);
+            }
+            return new ColumnStore(names, rowsPerChunk, numberOfSamples, dataOffset, channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public int getNumberOfFeatures() {
+        return names.length;
+    }
+
+    public long getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    public int getNumberOfChunks() {
+        return (int) ((numberOfSamples + rowsPerChunk - 1) / rowsPerChunk);
+    }
+
+    public int getRowsPerChunk() {
+        return rowsPerChunk;
+    }
+
+    public int getRowsInChunk(int chunk) {
+        return (int) Math.min(rowsPerChunk, numberOfSamples - (long) chunk * rowsPerChunk);
+    }
+
+    /*
+        Reads the features [from, to) of one chunk into target[0 .. to - from)[0 .. rows in chunk) with a single
+        positional read. Safe to call from several threads. Allocates a buffer per call, loops over the chunks
+        should pass one from newReadBuffer instead.
+     */
+    public void read(int chunk, int from, int to, double[][] target) throws IOException {
+        read(chunk, from, to, target, ByteBuffer.allocate((to - from) * getRowsInChunk(chunk) * Double.BYTES));
+    }
+
+    /*
+        As above, through the given buffer (at least to - from features of a full chunk), which a thread can reuse
+        for all of its reads.
+     */
+    public void read(int chunk, int from, int to, double[][] target, ByteBuffer buffer) throws IOException {
+        int rows = getRowsInChunk(chunk);
+        int bytes = (to - from) * rows * Double.BYTES;
+        if (buffer.capacity() < bytes) {
+            throw new IllegalArgumentException("buffer of " + buffer.capacity() + " bytes for " + bytes + " bytes");
+        }
+        buffer.clear();
+        buffer.limit(bytes);
+        long chunkOffset = dataOffset + (long) chunk * rowsPerChunk * names.length * Double.BYTES;
+        readFully(channel, buffer, chunkOffset + (long) from * rows * Double.BYTES);
+        buffer.flip();
+        DoubleBuffer values = buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        for (int c = 0; c < to - from; c++) {
+            values.get(target[c], 0, rows);
+        }
+    }
+
+    /*
+        Direct buffer for reads of up to the given number of features of one chunk. Not thread-safe, one per thread.
+     */
+    public ByteBuffer newReadBuffer(int features) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(features, Math.multiplyExact(rowsPerChunk, Double.BYTES)));
+    }
+
+    /*
+        All samples of one feature, the column has to fit into memory.
+     */
+    public double[] column(int feature) throws IOException {
+        double[] column = new double[Math.toIntExact(numberOfSamples)];
+        double[][] target = {new double[rowsPerChunk]};
+        ByteBuffer buffer = newReadBuffer(1);
+        for (int chunk = 0; chunk < getNumberOfChunks(); chunk++) {
+            read(chunk, feature, feature + 1, target, buffer);
+            System.arraycopy(target[0], 0, column, Math.multiplyExact(chunk, rowsPerChunk), getRowsInChunk(chunk));
+        }
+        return column;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnStore = features: " + names.length + ", samples: " + numberOfSamples + ", rows per chunk: " + rowsPerChunk;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of column store");
+            }
+            position += read;
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    // ----------------------------------------------
+    //  WRITER.
+    // ----------------------------------------------
+    // Appends rows, one chunk is buffered and then
+    // written transposed. The sample count in the
+    // header is patched on close.
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final String[] names;
+        private final int rowsPerChunk;
+        private final double[][] chunk;
+        private int rows;
+        private long numberOfSamples;
+
+        private Writer(Path file, String[] names, int rowsPerChunk) throws IOException {
+            this.names = names;
+            this.rowsPerChunk = rowsPerChunk;
+            this.chunk = new double[names.length][rowsPerChunk];
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            int headerBytes = 4 * Integer.BYTES + Long.BYTES;
+            byte[][] encoded = new byte[names.length][];
+            for (int i = 0; i < names.length; i++) {
+                encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+                headerBytes += Integer.BYTES + encoded[i].length;
+            }
+            ByteBuffer header = ByteBuffer.allocate((int) align(headerBytes)).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(names.length).putInt(rowsPerChunk).putLong(0L);
+            for (byte[] name : encoded) {
+                header.putInt(name.length).put(name);
+            }
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+
+        public void add(double[] row) throws IOException {
+            if (row.length != names.length) {
+                throw new IllegalArgumentException("expected " + names.length + " values, got " + row.length);
+            }
+            for (int c = 0; c < row.length; c++) {
+                chunk[c][rows] = row[c];
+            }
+            numberOfSamples++;
+            if (++rows == rowsPerChunk) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (rows == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(names.length * rows * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            for (double[] column : chunk) {
+                values.put(column, 0, rows);
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            rows = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                count.putLong(numberOfSamples).flip();
+                channel.write(count, 4 * Integer.BYTES);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package fschmidt.feature.selection.correlation;
 
+import fschmidt.feature.selection.Kernels;
 import org.apache.commons.math3.stat.correlation.KendallsCorrelation;
 import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
 import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
 
 import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Compute different types of correlation measures for the features.
@@ -19,6 +21,10 @@ public class CorrelationAlgorithm {
             return new PearsonsCorrelation().correlation(x, y);
         }
 
+        public CorrelationMatrix matrix(String[] names, double[][] columns) {
+            return CorrelationMatrices.pearson(names, columns);
+        }
+
         public String toString() {
             return "pearson";
         }
@@ -30,6 +36,10 @@ public class CorrelationAlgorithm {
             return new SpearmansCorrelation().correlation(x, y);
         }
 
+        public CorrelationMatrix matrix(String[] names, double[][] columns) {
+            return CorrelationMatrices.spearman(names, columns);
+        }
+
         public String toString() {
             return "spearmans";
         }
@@ -41,6 +51,10 @@ public class CorrelationAlgorithm {
             return new KendallsCorrelation().correlation(x, y);
         }
 
+        public CorrelationMatrix matrix(String[] names, double[][] columns) {
+            return CorrelationMatrices.kendall(names, columns);
+        }
+
         public String toString() {
             return "kendalls";
         }
@@ -51,25 +65,15 @@ public class CorrelationAlgorithm {
         public double correlation(double[] xs, double[] ys) {
             //TODO: check here that arrays are not null, of the same length etc
 
-            double sx = 0.0;
-            double sy = 0.0;
-            double sxx = 0.0;
-            double syy = 0.0;
-            double sxy = 0.0;
+            double[] moments = Kernels.moments(xs, ys);
+            double sx = moments[0];
+            double sy = moments[1];
+            double sxx = moments[2];
+            double syy = moments[3];
+            double sxy = moments[4];
 
             int n = xs.length;
 
-            for (int i = 0; i < n; ++i) {
-                double x = xs[i];
-                double y = ys[i];
-
-                sx += x;
-                sy += y;
-                sxx += x * x;
-                syy += y * y;
-                sxy += x * y;
-            }
-
             // covariation
             double cov = sxy / n - sx * sy / n / n;
             // standard error of x
@@ -81,11 +85,19 @@ public class CorrelationAlgorithm {
             return cov / sigmax / sigmay;
         }
 
+        @Override
+        public CorrelationMatrix matrix(String[] names, double[][] columns) {
+            return CorrelationMatrices.pearson(names, columns);
+        }
+
         @Override
         public String toString() {
             return "simplePearson";
         }
     };
+
+    public static final Correlation MutualInformation = new MutualInformationCorrelation(16);
+    public static final Correlation Distance = new DistanceCorrelation();
     private static final String sourceSeparator = " <-> ";
 
     private final Correlation[] correlations;
@@ -106,10 +118,42 @@ public class CorrelationAlgorithm {
 
         double correlation(double[] x, double y[]);
 
+        /*
+            All pairwise correlations of the given columns (one array per feature). Implementations may
+            replace the pair by pair default with a batch kernel.
+         */
+        default CorrelationMatrix matrix(String[] names, double[][] columns) {
+            return CorrelationMatrices.pairwise(this, names, columns);
+        }
+
+        /*
+            Identity of the method: the reduction, the CorrelationCache and the edge weights of the graph key the
+            matrices by it, so it has to contain every parameter that changes the values.
+         */
         String toString();
     }
 
+    /*
+        Correlation that is only exact at a fixed threshold (e.g. SampledCorrelation). The reduction then
+        cuts the graph at exactly this threshold instead of estimating one from the distribution of values.
+     */
+    public interface ThresholdedCorrelation extends Correlation {
+
+        double threshold();
+    }
+
     public Correlation[] getCorrelations() {
         return correlations;
     }
+
+    /*
+        Matrices of all correlations of this algorithm in one go, keyed (and ordered) by correlation name.
+     */
+    public Map<String, CorrelationMatrix> matrices(String[] names, double[][] columns) {
+        return CorrelationMatrices.matrices(correlations, names, columns);
+    }
+
+    public Map<String, CorrelationMatrix> matrices(String[] names, double[][] columns, CorrelationMatrix.Precision precision) {
+        return CorrelationMatrices.matrices(correlations, names, columns, precision);
+    }
 }
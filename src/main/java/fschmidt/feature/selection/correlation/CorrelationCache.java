@@ -0,0 +1,348 @@
+package fschmidt.feature.selection.correlation;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// ----------------------------------------------
+//  CORRELATION CACHE.
+// ----------------------------------------------
+// Content addressed on-disk cache of correlation
+// matrices. The key is a SHA-256 over the method
+// (class and parameterised name), the feature
+// names and every value of every column, so any
+// change of the data or the parameters is a miss.
+// A hit maps the stored packed triangle read-only
+// into memory instead of computing it again, in
+// segments of 1 GB, so entries over 2 GB are
+// hits as well. The
+// directory is bounded by maxBytes, the least
+// recently used files are evicted first.
+// Thresholded correlations are never cached, their
+// values are only exact near the threshold, and
+// neither are lagged ones, the file has no room
+// for the lags.
+//
+// File layout (little endian):
+//  int magic, int version, int bytes per value,
+//  int features,
+//  per feature: int length, UTF-8 name,
+//  padding to 8 bytes, double[pairs] triangle
+//  (float[pairs] for FLOAT32 matrices)
+//
+// @author fschmidt
+//
+public class CorrelationCache {
+
+    private static final int MAGIC = 0x434D5458; // "CMTX"
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".cmx";
+
+    private final Path directory;
+    private final long maxBytes;
+    private long hits;
+    private long misses;
+
+    public CorrelationCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+        Cache in the temp directory, bounded to 1 GiB.
+     */
+    public static CorrelationCache inTempDirectory() {
+        return new CorrelationCache(Paths.get(System.getProperty("java.io.tmpdir"), "graph-feature-selection-cache"), 1L << 30);
+    }
+
+    /*
+        Cached matrix if there is one for exactly this data, otherwise computes and stores it. Thresholded and
+        lagged correlations are computed without touching the cache (and count neither as hit nor as miss).
+     */
+    public synchronized CorrelationMatrix matrix(CorrelationAlgorithm.Correlation correlation, String[] names, double[][] columns) {
+        return matrix(correlation, names, columns, CorrelationMatrix.Precision.FLOAT64);
+    }
+
+    /*
+        As above in the precision, FLOAT32 matrices are separate entries of half the size.
+     */
+    public synchronized CorrelationMatrix matrix(CorrelationAlgorithm.Correlation correlation, String[] names, double[][] columns,
+                                                 CorrelationMatrix.Precision precision) {
+        if (correlation instanceof LaggedCorrelation) {
+            return correlation.matrix(names, columns);
+        }
+        if (correlation instanceof CorrelationAlgorithm.ThresholdedCorrelation) {
+            return correlation.matrix(names, columns).withPrecision(precision);
+        }
+        String key = fingerprint(correlation, names, columns, precision);
+        Path file = directory.resolve(key + SUFFIX);
+        if (Files.exists(file)) {
+            try {
+                CorrelationMatrix matrix = read(file);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                hits++;
+                return matrix;
+            } catch (IOException | RuntimeException ex) {
+                System.out.println("Dropping unreadable cache entry " + file + ": " + ex);
+                delete(file);
+            }
+        }
+        misses++;
+        CorrelationMatrix matrix = correlation.matrix(names, columns).withPrecision(precision);
+        try {
+            write(matrix, file);
+            evict(file);
+        } catch (IOException ex) {
+            System.out.println("Could not cache correlation matrix in " + directory + ": " + ex);
+        }
+        return matrix;
+    }
+
+    public static String fingerprint(CorrelationAlgorithm.Correlation correlation, String[] names, double[][] columns) {
+        return fingerprint(correlation, names, columns, CorrelationMatrix.Precision.FLOAT64);
+    }
+
+    public static String fingerprint(CorrelationAlgorithm.Correlation correlation, String[] names, double[][] columns,
+                                     CorrelationMatrix.Precision precision) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        // the class keeps two implementations apart even if their names collide
+        hasher.putString(correlation.getClass().getName(), StandardCharsets.UTF_8);
+        hasher.putString(correlation.toString(), StandardCharsets.UTF_8);
+        // FLOAT64 keys carry no precision, existing entries stay valid
+        if (precision != CorrelationMatrix.Precision.FLOAT64) {
+            hasher.putString(precision.name(), StandardCharsets.UTF_8);
+        }
+        hasher.putInt(names.length);
+        for (String name : names) {
+            hasher.putInt(name.length()).putString(name, StandardCharsets.UTF_8);
+        }
+        ByteBuffer buffer = null;
+        for (double[] column : columns) {
+            if (buffer == null || buffer.capacity() < column.length * Double.BYTES) {
+                buffer = ByteBuffer.allocate(column.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear();
+            buffer.asDoubleBuffer().put(column);
+            buffer.limit(column.length * Double.BYTES);
+            hasher.putInt(column.length).putBytes(buffer);
+        }
+        return hasher.hash().toString();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() throws IOException {
+        for (Path file : entries()) {
+            delete(file);
+        }
+    }
+
+    // --------> FILES
+
+    static void write(CorrelationMatrix matrix, Path file) throws IOException {
+        boolean float32 = matrix.getPrecision() == CorrelationMatrix.Precision.FLOAT32;
+        // write into a temporary file and move it, readers never see half written entries
+        Path tmp = Files.createTempFile(file.getParent(), "partial-", SUFFIX + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            writeHeader(channel, matrix.getNames(), float32 ? Float.BYTES : Double.BYTES);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int p = 0; p < matrix.getNumberOfPairs(); p++) {
+                if (chunk.remaining() < Double.BYTES) {
+                    flush(chunk, channel);
+                }
+                if (float32) {
+                    chunk.putFloat((float) matrix.value(p));
+                } else {
+                    chunk.putDouble(matrix.value(p));
+                }
+            }
+            flush(chunk, channel);
+        } catch (IOException ex) {
+            delete(tmp);
+            throw ex;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+        Writes the header at the start of the channel and returns the (aligned) offset of the triangle. Writers
+        that fill the triangle out of order (e.g. tile by tile) put value p at offset + p * bytesPerValue.
+     */
+    static long writeHeader(FileChannel channel, String[] names, int bytesPerValue) throws IOException {
+        List<byte[]> encoded = new ArrayList<>();
+        int headerBytes = 4 * Integer.BYTES;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            headerBytes += Integer.BYTES + bytes.length;
+        }
+        int offset = align(headerBytes);
+        ByteBuffer header = ByteBuffer.allocate(offset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(bytesPerValue).putInt(names.length);
+        for (byte[] name : encoded) {
+            header.putInt(name.length).put(name);
+        }
+        header.clear();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        channel.position(offset);
+        return offset;
+    }
+
+    /*
+        Maps the triangle of a cache file read-only. The header is read with positional reads, the triangle is
+        mapped in segments of CorrelationMatrix.SEGMENT_PAIRS values since a single mapping ends at 2 GB.
+     */
+    static CorrelationMatrix read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer fields = readFully(channel, 0, 4 * Integer.BYTES, size, file);
+            if (fields.getInt() != MAGIC || fields.getInt() != VERSION) {
+                throw new IOException("not a correlation matrix file: " + file);
+            }
+            int bytesPerValue = fields.getInt();
+            if (bytesPerValue != Float.BYTES && bytesPerValue != Double.BYTES) {
+                throw new IOException("unknown value width " + bytesPerValue + " in " + file);
+            }
+            int features = fields.getInt();
+            if (features < 0) {
+                throw new IOException("negative number of features in " + file);
+            }
+            String[] names = new String[features];
+            long position = 4 * Integer.BYTES;
+            for (int i = 0; i < names.length; i++) {
+                int length = readFully(channel, position, Integer.BYTES, size, file).getInt();
+                position += Integer.BYTES;
+                if (length < 0) {
+                    throw new IOException("negative name length in " + file);
+                }
+                names[i] = StandardCharsets.UTF_8.decode(readFully(channel, position, length, size, file)).toString();
+                position += length;
+            }
+            long offset = (position + 7) & ~7L;
+            int pairs = CorrelationMatrix.numberOfPairs(names.length);
+            if (size - offset != (long) pairs * bytesPerValue) {
+                throw new IOException("truncated correlation matrix file: " + file);
+            }
+            // the mappings stay valid after the channel is closed
+            int segments = Math.max(1, (int) ((pairs + (long) CorrelationMatrix.SEGMENT_PAIRS - 1) / CorrelationMatrix.SEGMENT_PAIRS));
+            ByteBuffer[] mapped = new ByteBuffer[segments];
+            for (int segment = 0; segment < segments; segment++) {
+                long first = (long) segment * CorrelationMatrix.SEGMENT_PAIRS;
+                long values = Math.min(CorrelationMatrix.SEGMENT_PAIRS, pairs - first);
+                mapped[segment] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * bytesPerValue,
+                        values * bytesPerValue).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (bytesPerValue == Float.BYTES) {
+                FloatBuffer[] values = new FloatBuffer[segments];
+                for (int segment = 0; segment < segments; segment++) {
+                    values[segment] = mapped[segment].asFloatBuffer();
+                }
+                return new CorrelationMatrix(names, values);
+            }
+            DoubleBuffer[] values = new DoubleBuffer[segments];
+            for (int segment = 0; segment < segments; segment++) {
+                values[segment] = mapped[segment].asDoubleBuffer();
+            }
+            return new CorrelationMatrix(names, values);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length, long size, Path file) throws IOException {
+        if (length > size - position) {
+            throw new IOException("truncated correlation matrix file: " + file);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("truncated correlation matrix file: " + file);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void evict(Path keep) throws IOException {
+        List<Path> files = entries();
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        files.sort(Comparator.comparing(CorrelationCache::lastModified));
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (!file.equals(keep)) {
+                total -= Files.size(file);
+                delete(file);
+            }
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException ex) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void flush(ByteBuffer chunk, FileChannel channel) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            System.out.println("Could not delete " + file + ": " + ex);
+        }
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    @Override
+    public String toString() {
+        return "CorrelationCache = directory: " + directory + ", max bytes: " + maxBytes + ", hits: " + hits + ", misses: " + misses;
+    }
+}
@@ -0,0 +1,202 @@
+package fschmidt.feature.selection.correlation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// ----------------------------------------------
+//  CORRELATION CLUSTERS.
+// ----------------------------------------------
+// Groups of near-duplicate features, e.g. the same
+// telemetry value exported under several names.
+// Every pair with |r| > threshold is merged by a
+// single-linkage union-find (path halving, union
+// by size), each group is represented by its best
+// ranked member.
+//
+// With a graph cut below the threshold, groups are
+// further split into members with the same
+// neighbourhood at the cut (|r| <= cut to exactly
+// the same features). Such members are never
+// adjacent and every clique through one of them is
+// a clique through any other, so the cliques of
+// the representatives expand into exactly the
+// cliques of all features. A member whose noisy
+// correlations put it on the other side of the
+// cut for some feature stays its own group.
+//
+// @author fschmidt
+//
+public class CorrelationClusters {
+
+    private final double threshold;
+    private final Map<String, String> representatives;
+    private final Map<String, List<String>> members;
+    private final Map<String, Double> representativeRankings;
+
+    private CorrelationClusters(double threshold, Map<String, String> representatives, Map<String, List<String>> members,
+                                Map<String, Double> representativeRankings) {
+        this.threshold = threshold;
+        this.representatives = Collections.unmodifiableMap(representatives);
+        this.members = Collections.unmodifiableMap(members);
+        this.representativeRankings = Collections.unmodifiableMap(representativeRankings);
+    }
+
+    /*
+        Clusters the ranked features (NaN rankings are left out) of the matrix, features missing in the matrix
+        stay singletons.
+     */
+    public static CorrelationClusters of(CorrelationMatrix matrix, Map<String, Double> rankingValues, double threshold) {
+        return of(matrix, rankingValues, threshold, Double.NaN);
+    }
+
+    /*
+        As above, groups are split by the neighbourhoods of their members at the cut (NaN: not split).
+     */
+    public static CorrelationClusters of(CorrelationMatrix matrix, Map<String, Double> rankingValues, double threshold,
+                                         double cut) {
+        int[] parents = new int[matrix.size()];
+        int[] sizes = new int[matrix.size()];
+        boolean[] ranked = new boolean[matrix.size()];
+        for (int i = 0; i < matrix.size(); i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+            Double ranking = rankingValues.get(matrix.getName(i));
+            ranked[i] = ranking != null && !Double.isNaN(ranking);
+        }
+        for (int i = 0; i < matrix.size(); i++) {
+            if (!ranked[i]) continue;
+            for (int j = i + 1; j < matrix.size(); j++) {
+                // NaN never exceeds the threshold
+                if (ranked[j] && Math.abs(matrix.get(i, j)) > threshold) {
+                    union(parents, sizes, i, j);
+                }
+            }
+        }
+
+        int[] groups = new int[matrix.size()];
+        for (int i = 0; i < matrix.size(); i++) {
+            groups[i] = find(parents, i);
+        }
+        if (!Double.isNaN(cut)) {
+            splitByNeighbourhood(matrix, ranked, sizes, groups, cut);
+        }
+
+        // best ranked member per group, ties go to the first feature
+        Map<Integer, String> best = new LinkedHashMap<>();
+        for (int i = 0; i < matrix.size(); i++) {
+            if (!ranked[i]) continue;
+            String name = matrix.getName(i);
+            best.merge(groups[i], name,
+                    (current, candidate) -> rankingValues.get(candidate) > rankingValues.get(current) ? candidate : current);
+        }
+
+        Map<String, String> representatives = new LinkedHashMap<>();
+        Map<String, List<String>> members = new LinkedHashMap<>();
+        Map<String, Double> representativeRankings = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> ranking : rankingValues.entrySet()) {
+            if (ranking.getValue() == null || Double.isNaN(ranking.getValue())) continue;
+            int i = matrix.indexOf(ranking.getKey());
+            String representative = i < 0 ? ranking.getKey() : best.get(groups[i]);
+            representatives.put(ranking.getKey(), representative);
+            members.computeIfAbsent(representative, r -> new ArrayList<>()).add(ranking.getKey());
+            if (representative.equals(ranking.getKey())) {
+                representativeRankings.put(representative, ranking.getValue());
+            }
+        }
+        members.replaceAll((representative, group) -> Collections.unmodifiableList(group));
+        return new CorrelationClusters(threshold, representatives, members, representativeRankings);
+    }
+
+    /*
+        Members of a group with the same ranked features at |r| <= cut (NaN excluded) get the same new group id,
+        singletons keep their root. O(d) per member of a group.
+     */
+    private static void splitByNeighbourhood(CorrelationMatrix matrix, boolean[] ranked, int[] sizes, int[] groups, double cut) {
+        Map<List<Object>, Integer> split = new HashMap<>();
+        for (int i = 0; i < matrix.size(); i++) {
+            if (!ranked[i] || sizes[groups[i]] == 1) continue;
+            BitSet neighbourhood = new BitSet(matrix.size());
+            for (int j = 0; j < matrix.size(); j++) {
+                if (j != i && ranked[j] && Math.abs(matrix.get(i, j)) <= cut) {
+                    neighbourhood.set(j);
+                }
+            }
+            // ids above the feature indices never collide with a root
+            groups[i] = split.computeIfAbsent(List.of(groups[i], neighbourhood), key -> matrix.size() + split.size());
+        }
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int[] sizes, int i, int j) {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+        if (rootI == rootJ) {
+            return;
+        }
+        if (sizes[rootI] < sizes[rootJ]) {
+            int swap = rootI;
+            rootI = rootJ;
+            rootJ = swap;
+        }
+        parents[rootJ] = rootI;
+        sizes[rootI] += sizes[rootJ];
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /*
+        Representative of a clustered feature, null if the feature was not clustered (unranked).
+     */
+    public String getRepresentative(String feature) {
+        return representatives.get(feature);
+    }
+
+    /*
+        Feature -> representative for every clustered feature.
+     */
+    public Map<String, String> getRepresentatives() {
+        return representatives;
+    }
+
+    /*
+        All features of the group of a representative, the representative included.
+     */
+    public List<String> getMembers(String representative) {
+        return members.getOrDefault(representative, Collections.emptyList());
+    }
+
+    /*
+        Ranking values of the representatives only, in the order of the original rankings.
+     */
+    public Map<String, Double> getRepresentativeRankings() {
+        return representativeRankings;
+    }
+
+    public int getNumberOfFeatures() {
+        return representatives.size();
+    }
+
+    public int getNumberOfClusters() {
+        return members.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CorrelationClusters = threshold: " + threshold + ", features: " + representatives.size()
+                + ", clusters: " + members.size();
+    }
+}
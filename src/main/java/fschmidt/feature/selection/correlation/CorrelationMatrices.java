@@ -0,0 +1,526 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.Kernels;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  CORRELATION MATRICES.
+// ----------------------------------------------
+// Building blocks to compute all pairwise
+// correlations at once instead of pair by pair:
+//
+//  - columns:     transposes the row major samples
+//                 once into one array per feature
+//  - standardise: centres every column and scales
+//                 it to unit length, so that the
+//                 dot product of two columns is
+//                 their Pearson correlation
+//  - gram:        all dot products of the upper
+//                 triangle with a cache blocked,
+//                 multi-threaded kernel
+//  - spearman:    ranks every column once and
+//                 runs the Pearson kernel on ranks
+//  - kendall:     Knight's O(n log n) tau-b on
+//                 permutations sorted once per column
+//  - matrices:    several correlations sharing the
+//                 per column work (SharedColumns)
+//  - pairwise:    fallback for any Correlation,
+//                 one call per pair in parallel
+//  - out-of-core: Pearson of a disk-backed
+//                 ColumnStore, tile by tile into a
+//                 memory mapped packed triangle
+//
+// @author fschmidt
+//
+public enum CorrelationMatrices {
+    ;
+
+    // features per tile side and samples per row chunk, two tiles of chunks stay in L2
+    private static final int BLOCK = 32;
+    private static final int ROWS = 512;
+    // features per tile side of the out-of-core kernel
+    private static final int STORE_BLOCK = 256;
+
+    public static double[][] columns(List<double[]> rows, int[] indices) {
+        double[][] columns = new double[indices.length][rows.size()];
+        for (int s = 0; s < rows.size(); s++) {
+            double[] row = rows.get(s);
+            for (int c = 0; c < indices.length; c++) {
+                columns[c][s] = row[indices[c]];
+            }
+        }
+        return columns;
+    }
+
+    /*
+        Centred, unit length copies of the columns. Constant columns (zero variance) become NaN.
+     */
+    public static double[][] standardise(double[][] columns) {
+        double[][] standardised = new double[columns.length][];
+        IntStream.range(0, columns.length).parallel().forEach(c -> {
+            double[] x = columns[c];
+            double[] z = new double[x.length];
+            double mean = 0.0;
+            for (double v : x) {
+                mean += v;
+            }
+            mean /= x.length;
+            double sumOfSquares = 0.0;
+            for (int s = 0; s < x.length; s++) {
+                z[s] = x[s] - mean;
+                sumOfSquares += z[s] * z[s];
+            }
+            if (sumOfSquares > 0.0 && !Double.isInfinite(sumOfSquares)) {
+                double scale = 1.0 / Math.sqrt(sumOfSquares);
+                for (int s = 0; s < z.length; s++) {
+                    z[s] *= scale;
+                }
+            } else {
+                Arrays.fill(z, Double.NaN);
+            }
+            standardised[c] = z;
+        });
+        return standardised;
+    }
+
+    /*
+        Pearson correlation matrix of the columns.
+     */
+    public static CorrelationMatrix pearson(String[] names, double[][] columns) {
+        return pearson(names, columns, CorrelationMatrix.Precision.FLOAT64);
+    }
+
+    /*
+        Pearson matrix written directly in the given precision, FLOAT32 halves the memory of the triangle.
+     */
+    public static CorrelationMatrix pearson(String[] names, double[][] columns, CorrelationMatrix.Precision precision) {
+        return gram(names, standardise(columns), precision);
+    }
+
+    /*
+        Spearman correlation matrix: average ranks per column (ties share their mean rank), then Pearson
+        on the ranks. Columns containing NaN become NaN.
+     */
+    public static CorrelationMatrix spearman(String[] names, double[][] columns) {
+        return spearman(names, new SharedColumns(columns));
+    }
+
+    static CorrelationMatrix spearman(String[] names, SharedColumns shared) {
+        return pearson(names, shared.averageRanks());
+    }
+
+    /*
+        Kendall tau-b matrix with Knight's algorithm, same formula as KendallsCorrelation. Every column is
+        sorted once; its permutation and dense integer ranks are shared by all pairs. For a pair (x, y) the
+        y ranks are laid out in x order, runs of tied x are sorted by y, and a merge sort counts the
+        discordant swaps. Rows of the triangle run in parallel.
+     */
+    public static CorrelationMatrix kendall(String[] names, double[][] columns) {
+        return kendall(names, new SharedColumns(columns));
+    }
+
+    static CorrelationMatrix kendall(String[] names, SharedColumns shared) {
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        int d = shared.columns().length;
+        int n = shared.numberOfSamples();
+        int[][] orders = shared.orders();
+        int[][] ranks = shared.denseRanks();
+        long[] tiedPairs = shared.tiedPairs();
+        long numberOfPairs = (long) n * (n - 1) / 2;
+        IntStream.range(0, d).parallel().forEach(i -> {
+            int[] ys = new int[n];
+            int[] buffer = new int[n];
+            int[] orderX = orders[i];
+            int[] ranksX = ranks[i];
+            for (int j = i + 1; j < d; j++) {
+                int[] ranksY = ranks[j];
+                for (int s = 0; s < n; s++) {
+                    ys[s] = ranksY[orderX[s]];
+                }
+                long tiedXYPairs = 0;
+                int start = 0;
+                while (start < n) {
+                    int end = start + 1;
+                    while (end < n && ranksX[orderX[end]] == ranksX[orderX[start]]) {
+                        end++;
+                    }
+                    if (end - start > 1) {
+                        Arrays.sort(ys, start, end);
+                        tiedXYPairs += tiedPairs(ys, start, end);
+                    }
+                    start = end;
+                }
+                long swaps = countSwaps(ys, buffer);
+                long concordantMinusDiscordant = numberOfPairs - tiedPairs[i] - tiedPairs[j] + tiedXYPairs - 2 * swaps;
+                double nonTiedPairsMultiplied = (numberOfPairs - tiedPairs[i]) * (double) (numberOfPairs - tiedPairs[j]);
+                matrix.set(i, j, concordantMinusDiscordant / Math.sqrt(nonTiedPairsMultiplied));
+            }
+        });
+        return matrix;
+    }
+
+    /*
+        Permutation of the sample indices that sorts x ascending (Double.compare order).
+     */
+    public static int[] order(double[] x) {
+        int[] order = new int[x.length];
+        for (int s = 0; s < order.length; s++) {
+            order[s] = s;
+        }
+        IntArrays.quickSort(order, (a, b) -> Double.compare(x[a], x[b]));
+        return order;
+    }
+
+    /*
+        1-based ranks of x, tied values get the average of their ranks (as NaturalRanking does by default).
+     */
+    public static double[] averageRanks(double[] x, int[] order) {
+        double[] ranks = new double[x.length];
+        int start = 0;
+        while (start < order.length) {
+            int end = start + 1;
+            while (end < order.length && Double.compare(x[order[start]], x[order[end]]) == 0) {
+                end++;
+            }
+            double rank = (start + 1 + end) / 2.0;
+            for (int s = start; s < end; s++) {
+                ranks[order[s]] = rank;
+            }
+            start = end;
+        }
+        return ranks;
+    }
+
+    /*
+        0-based ranks of x where equal values share a rank and ranks have no gaps.
+     */
+    public static int[] denseRanks(double[] x, int[] order) {
+        int[] ranks = new int[x.length];
+        int rank = 0;
+        for (int s = 0; s < order.length; s++) {
+            if (s > 0 && Double.compare(x[order[s - 1]], x[order[s]]) != 0) {
+                rank++;
+            }
+            ranks[order[s]] = rank;
+        }
+        return ranks;
+    }
+
+    // number of tied pairs sum t * (t - 1) / 2 over runs of equal values in a sorted range
+    private static long tiedPairs(int[] sorted, int from, int to) {
+        long tied = 0;
+        long run = 1;
+        for (int s = from + 1; s < to; s++) {
+            if (sorted[s] == sorted[s - 1]) {
+                run++;
+            } else {
+                tied += run * (run - 1) / 2;
+                run = 1;
+            }
+        }
+        return tied + run * (run - 1) / 2;
+    }
+
+    /*
+        Sorts values ascending with a bottom up merge sort and returns the number of swaps (pairs out of order).
+        The sorted result may end up in buffer, both arrays are scratch space.
+     */
+    private static long countSwaps(int[] values, int[] buffer) {
+        int n = values.length;
+        long swaps = 0;
+        int[] src = values;
+        int[] dst = buffer;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int l = lo;
+                int r = mid;
+                int k = lo;
+                while (l < mid && r < hi) {
+                    if (src[l] <= src[r]) {
+                        dst[k++] = src[l++];
+                    } else {
+                        swaps += mid - l;
+                        dst[k++] = src[r++];
+                    }
+                }
+                while (l < mid) {
+                    dst[k++] = src[l++];
+                }
+                while (r < hi) {
+                    dst[k++] = src[r++];
+                }
+            }
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        return swaps;
+    }
+
+    /*
+        Upper triangle of Z^T Z for standardised columns Z, clamped to [-1, 1]. Tiles of BLOCK x BLOCK
+        features are processed in parallel, each one streaming through the samples in chunks of ROWS.
+     */
+    public static CorrelationMatrix gram(String[] names, double[][] standardised) {
+        return gram(names, standardised, CorrelationMatrix.Precision.FLOAT64);
+    }
+
+    public static CorrelationMatrix gram(String[] names, double[][] standardised, CorrelationMatrix.Precision precision) {
+        CorrelationMatrix matrix = new CorrelationMatrix(names, precision);
+        int d = standardised.length;
+        int n = d == 0 ? 0 : standardised[0].length;
+        int blocks = (d + BLOCK - 1) / BLOCK;
+        List<int[]> tiles = new ArrayList<>();
+        for (int bi = 0; bi < blocks; bi++) {
+            for (int bj = bi; bj < blocks; bj++) {
+                tiles.add(new int[]{bi, bj});
+            }
+        }
+        tiles.parallelStream().forEach(tile -> {
+            int i0 = tile[0] * BLOCK;
+            int i1 = Math.min(i0 + BLOCK, d);
+            int j0 = tile[1] * BLOCK;
+            int j1 = Math.min(j0 + BLOCK, d);
+            double[] sums = new double[BLOCK * BLOCK];
+            for (int r0 = 0; r0 < n; r0 += ROWS) {
+                int r1 = Math.min(r0 + ROWS, n);
+                for (int i = i0; i < i1; i++) {
+                    double[] zi = standardised[i];
+                    for (int j = Math.max(j0, i + 1); j < j1; j++) {
+                        sums[(i - i0) * BLOCK + (j - j0)] += Kernels.dot(zi, standardised[j], r0, r1);
+                    }
+                }
+            }
+            for (int i = i0; i < i1; i++) {
+                for (int j = Math.max(j0, i + 1); j < j1; j++) {
+                    matrix.set(i, j, Math.max(-1.0, Math.min(1.0, sums[(i - i0) * BLOCK + (j - j0)])));
+                }
+            }
+        });
+        return matrix;
+    }
+
+    /*
+        Pearson matrix of a ColumnStore with bounded memory, written to the file in the CorrelationCache
+        format and returned memory mapped. One pass over the chunks gives mean and centred sum of squares
+        per feature (merged with Chan's formula). Then every tile of STORE_BLOCK x STORE_BLOCK features
+        streams through the chunks, standardises both blocks of a chunk on the fly, accumulates their dot
+        products and writes its part of the triangle. Tiles run in parallel; each one holds two blocks of
+        one chunk and its sums, independent of the number of samples.
+     */
+    public static CorrelationMatrix pearson(ColumnStore store, Path file) throws IOException {
+        return pearson(store, file, CorrelationMatrix.Precision.FLOAT64);
+    }
+
+    /*
+        As above, the triangle is written in the precision (accumulated in double either way).
+     */
+    public static CorrelationMatrix pearson(ColumnStore store, Path file, CorrelationMatrix.Precision precision) throws IOException {
+        String[] names = store.getNames();
+        int d = names.length;
+        // fail before the pass if the triangle cannot be addressed
+        CorrelationMatrix.numberOfPairs(d);
+        double[] means = new double[d];
+        double[] scales = new double[d];
+        columnMoments(store, means, scales);
+
+        int blocks = (d + STORE_BLOCK - 1) / STORE_BLOCK;
+        List<int[]> tiles = new ArrayList<>();
+        for (int bi = 0; bi < blocks; bi++) {
+            for (int bj = bi; bj < blocks; bj++) {
+                tiles.add(new int[]{bi, bj});
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int bytesPerValue = precision == CorrelationMatrix.Precision.FLOAT32 ? Float.BYTES : Double.BYTES;
+            long offset = CorrelationCache.writeHeader(channel, names, bytesPerValue);
+            tiles.parallelStream().forEach(tile -> {
+                try {
+                    pearsonTile(store, means, scales, tile[0] * STORE_BLOCK, tile[1] * STORE_BLOCK, channel, offset, bytesPerValue);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return CorrelationCache.read(file);
+    }
+
+    /*
+        Means and 1 / sqrt(centred sum of squares) per feature, NaN scale for constant or non finite features.
+     */
+    private static void columnMoments(ColumnStore store, double[] means, double[] scales) throws IOException {
+        int d = means.length;
+        double[] sumsOfSquares = new double[d];
+        long count = 0;
+        double[][] block = new double[Math.min(STORE_BLOCK, d)][store.getRowsPerChunk()];
+        ByteBuffer buffer = store.newReadBuffer(block.length);
+        for (int chunk = 0; chunk < store.getNumberOfChunks(); chunk++) {
+            int rows = store.getRowsInChunk(chunk);
+            for (int f0 = 0; f0 < d; f0 += STORE_BLOCK) {
+                int f1 = Math.min(f0 + STORE_BLOCK, d);
+                store.read(chunk, f0, f1, block, buffer);
+                for (int f = f0; f < f1; f++) {
+                    double[] x = block[f - f0];
+                    double mean = 0.0;
+                    for (int r = 0; r < rows; r++) {
+                        mean += x[r];
+                    }
+                    mean /= rows;
+                    double sumOfSquares = 0.0;
+                    for (int r = 0; r < rows; r++) {
+                        sumOfSquares += (x[r] - mean) * (x[r] - mean);
+                    }
+                    double delta = mean - means[f];
+                    long merged = count + rows;
+                    sumsOfSquares[f] += sumOfSquares + delta * delta * count * rows / merged;
+                    means[f] += delta * rows / merged;
+                }
+            }
+            count += rows;
+        }
+        for (int f = 0; f < d; f++) {
+            scales[f] = sumsOfSquares[f] > 0.0 && !Double.isInfinite(sumsOfSquares[f]) ? 1.0 / Math.sqrt(sumsOfSquares[f]) : Double.NaN;
+        }
+    }
+
+    private static void pearsonTile(ColumnStore store, double[] means, double[] scales, int i0, int j0,
+                                    FileChannel channel, long offset, int bytesPerValue) throws IOException {
+        int d = means.length;
+        int i1 = Math.min(i0 + STORE_BLOCK, d);
+        int j1 = Math.min(j0 + STORE_BLOCK, d);
+        boolean diagonal = i0 == j0;
+        double[][] xs = new double[i1 - i0][store.getRowsPerChunk()];
+        double[][] ys = diagonal ? xs : new double[j1 - j0][store.getRowsPerChunk()];
+        double[] sums = new double[STORE_BLOCK * STORE_BLOCK];
+        // one buffer for both blocks, the values are copied out before the next read
+        ByteBuffer buffer = store.newReadBuffer(Math.max(i1 - i0, j1 - j0));
+        for (int chunk = 0; chunk < store.getNumberOfChunks(); chunk++) {
+            int rows = store.getRowsInChunk(chunk);
+            store.read(chunk, i0, i1, xs, buffer);
+            standardise(xs, i0, i1, rows, means, scales);
+            if (!diagonal) {
+                store.read(chunk, j0, j1, ys, buffer);
+                standardise(ys, j0, j1, rows, means, scales);
+            }
+            for (int i = i0; i < i1; i++) {
+                double[] zi = xs[i - i0];
+                for (int j = Math.max(j0, i + 1); j < j1; j++) {
+                    sums[(i - i0) * STORE_BLOCK + (j - j0)] += Kernels.dot(zi, ys[j - j0], 0, rows);
+                }
+            }
+        }
+        // every row of the tile is a contiguous run of the packed triangle
+        ByteBuffer run = ByteBuffer.allocate(STORE_BLOCK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = i0; i < i1; i++) {
+            int from = Math.max(j0, i + 1);
+            if (from >= j1) continue;
+            run.clear();
+            for (int j = from; j < j1; j++) {
+                double r = Math.max(-1.0, Math.min(1.0, sums[(i - i0) * STORE_BLOCK + (j - j0)]));
+                if (bytesPerValue == Float.BYTES) {
+                    run.putFloat((float) r);
+                } else {
+                    run.putDouble(r);
+                }
+            }
+            run.flip();
+            long position = offset + packedIndex(i, from, d) * bytesPerValue;
+            while (run.hasRemaining()) {
+                position += channel.write(run, position);
+            }
+        }
+    }
+
+    private static void standardise(double[][] block, int from, int to, int rows, double[] means, double[] scales) {
+        for (int f = from; f < to; f++) {
+            double[] x = block[f - from];
+            double mean = means[f];
+            double scale = scales[f];
+            for (int r = 0; r < rows; r++) {
+                x[r] = (x[r] - mean) * scale;
+            }
+        }
+    }
+
+    // position of (i, j), i < j, in the packed upper triangle of d features
+    private static long packedIndex(int i, int j, int d) {
+        return (long) i * d - (long) i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    /*
+        Matrices of several correlations at once, keyed by their names. Intermediate results (standardised
+        columns, sort permutations, ranks) are computed once and shared; Pearson and SimplePearson share one
+        matrix. Correlations implementing SharedColumnsCorrelation reuse the shared columns, all others fall back
+        to their own matrix method.
+     */
+    public static Map<String, CorrelationMatrix> matrices(CorrelationAlgorithm.Correlation[] correlations,
+                                                          String[] names, double[][] columns) {
+        return matrices(correlations, names, columns, CorrelationMatrix.Precision.FLOAT64);
+    }
+
+    /*
+        As above, the matrices are returned in the precision. Pearson is accumulated straight into it, the others
+        are converted; lagged matrices stay FLOAT64 together with their lags.
+     */
+    public static Map<String, CorrelationMatrix> matrices(CorrelationAlgorithm.Correlation[] correlations,
+                                                          String[] names, double[][] columns,
+                                                          CorrelationMatrix.Precision precision) {
+        SharedColumns shared = new SharedColumns(columns);
+        Map<String, CorrelationMatrix> matrices = new LinkedHashMap<>();
+        CorrelationMatrix pearson = null;
+        for (CorrelationAlgorithm.Correlation correlation : correlations) {
+            CorrelationMatrix matrix;
+            if (correlation == CorrelationAlgorithm.Pearson || correlation == CorrelationAlgorithm.SimplePearson) {
+                if (pearson == null) {
+                    pearson = gram(names, shared.standardised(), precision);
+                }
+                matrix = pearson;
+            } else if (correlation == CorrelationAlgorithm.Spearmans) {
+                matrix = spearman(names, shared);
+            } else if (correlation == CorrelationAlgorithm.Kendalls) {
+                matrix = kendall(names, shared);
+            } else if (correlation instanceof SharedColumnsCorrelation) {
+                matrix = ((SharedColumnsCorrelation) correlation).matrix(names, shared);
+            } else {
+                matrix = correlation.matrix(names, columns);
+            }
+            if (!(matrix instanceof LaggedCorrelation.Matrix)) {
+                matrix = matrix.withPrecision(precision);
+            }
+            matrices.put(correlation.toString(), matrix);
+        }
+        return matrices;
+    }
+
+    /*
+        Correlation matrix from a pairwise correlation, pairs are computed in parallel.
+     */
+    public static CorrelationMatrix pairwise(CorrelationAlgorithm.Correlation correlation, String[] names, double[][] columns) {
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        IntStream.range(0, columns.length).parallel().forEach(i -> {
+            for (int j = i + 1; j < columns.length; j++) {
+                matrix.set(i, j, correlation.correlation(columns[i], columns[j]));
+            }
+        });
+        return matrix;
+    }
+}
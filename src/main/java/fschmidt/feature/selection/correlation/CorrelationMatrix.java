@@ -0,0 +1,224 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.graph.EdgeWeights;
+
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// ----------------------------------------------
+//  CORRELATION MATRIX.
+// ----------------------------------------------
+// Symmetric matrix of pairwise correlations of
+// named features. Only the strict upper triangle
+// is stored, packed row by row, so (i, j) and
+// (j, i) share one slot and the diagonal is
+// implicitly 1. Pairs involving a constant
+// feature are NaN. The triangle lives in a
+// DoubleBuffer, or in a FloatBuffer with FLOAT32
+// precision (4 bytes per pair, 800 MB for 20k
+// features), either on the heap or memory mapped
+// (read-only) from a CorrelationCache. A single
+// mapping is limited to 2 GB, so mapped triangles
+// are split into segments of SEGMENT_PAIRS pairs.
+//
+// As EdgeWeights the matrix can be registered on
+// an UndirectedGraph, which then reads the edge
+// weights from here instead of boxing them into
+// the property map of every edge.
+//
+// @author fschmidt
+//
+public class CorrelationMatrix implements EdgeWeights {
+
+    public enum Precision {
+        FLOAT64, FLOAT32
+    }
+
+    // pairs per mapped segment, 1 GB of doubles
+    static final int SEGMENT_PAIRS = 1 << 27;
+    private static final int SEGMENT_SHIFT = Integer.numberOfTrailingZeros(SEGMENT_PAIRS);
+
+    private final String[] names;
+    private final Map<String, Integer> indices;
+    private final DoubleBuffer[] doubles; // either these
+    private final FloatBuffer[] floats;   // or these are null
+    private final int pairs;
+    // a heap matrix has one buffer, then every position falls into segment 0
+    private final int shift;
+
+    public CorrelationMatrix(String[] names) {
+        this(names, Precision.FLOAT64);
+    }
+
+    public CorrelationMatrix(String[] names, Precision precision) {
+        this(names, precision == Precision.FLOAT32 ? null : new DoubleBuffer[]{DoubleBuffer.wrap(new double[numberOfPairs(names.length)])},
+                precision == Precision.FLOAT32 ? new FloatBuffer[]{FloatBuffer.wrap(new float[numberOfPairs(names.length)])} : null);
+    }
+
+    /*
+        Matrix over consecutive segments of the packed triangle, all but the last with SEGMENT_PAIRS values (or a
+        single segment holding all of them).
+     */
+    CorrelationMatrix(String[] names, DoubleBuffer[] segments) {
+        this(names, segments, null);
+    }
+
+    CorrelationMatrix(String[] names, FloatBuffer[] segments) {
+        this(names, null, segments);
+    }
+
+    private CorrelationMatrix(String[] names, DoubleBuffer[] doubles, FloatBuffer[] floats) {
+        this.names = names.clone();
+        this.indices = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (indices.putIfAbsent(names[i], i) != null) {
+                throw new IllegalArgumentException("duplicate feature name: " + names[i]);
+            }
+        }
+        Buffer[] segments = doubles != null ? doubles : floats;
+        long capacity = 0;
+        for (int s = 0; s < segments.length; s++) {
+            if (s < segments.length - 1 && segments[s].capacity() != SEGMENT_PAIRS) {
+                throw new IllegalArgumentException("segment " + s + " has " + segments[s].capacity() + " values, expected " + SEGMENT_PAIRS);
+            }
+            capacity += segments[s].capacity();
+        }
+        if (capacity != numberOfPairs(names.length)) {
+            throw new IllegalArgumentException("expected " + numberOfPairs(names.length) + " values, got " + capacity);
+        }
+        this.doubles = doubles;
+        this.floats = floats;
+        this.pairs = (int) capacity;
+        this.shift = segments.length == 1 ? Integer.SIZE - 1 : SEGMENT_SHIFT;
+    }
+
+    static int numberOfPairs(int numberOfFeatures) {
+        long pairs = (long) numberOfFeatures * (numberOfFeatures - 1) / 2;
+        if (pairs > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many features for a packed correlation matrix: " + numberOfFeatures);
+        }
+        return (int) pairs;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public int getNumberOfPairs() {
+        return pairs;
+    }
+
+    public Precision getPrecision() {
+        return floats != null ? Precision.FLOAT32 : Precision.FLOAT64;
+    }
+
+    /*
+        This matrix if it already has the precision, otherwise a copy in that precision.
+     */
+    public CorrelationMatrix withPrecision(Precision precision) {
+        if (precision == getPrecision()) {
+            return this;
+        }
+        CorrelationMatrix copy = new CorrelationMatrix(names, precision);
+        for (int p = 0; p < getNumberOfPairs(); p++) {
+            copy.put(p, value(p));
+        }
+        return copy;
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /*
+        Index of the feature or -1 if unknown.
+     */
+    public int indexOf(String name) {
+        Integer i = indices.get(name);
+        return i == null ? -1 : i;
+    }
+
+    public double get(int i, int j) {
+        if (i == j) {
+            return 1.0;
+        }
+        return value(index(i, j));
+    }
+
+    public double get(String name1, String name2) {
+        int i = indexOf(name1);
+        int j = indexOf(name2);
+        if (i < 0 || j < 0) {
+            throw new IllegalArgumentException("unknown feature: " + (i < 0 ? name1 : name2));
+        }
+        return get(i, j);
+    }
+
+    /*
+        Edge weight lookup, NaN for features that are not in the matrix.
+     */
+    @Override
+    public double getWeight(String vertex1, String vertex2) {
+        int i = indexOf(vertex1);
+        int j = indexOf(vertex2);
+        return i < 0 || j < 0 ? Double.NaN : get(i, j);
+    }
+
+    @Override
+    public boolean isSinglePrecision() {
+        return floats != null;
+    }
+
+    public void set(int i, int j, double value) {
+        if (i == j) {
+            throw new IllegalArgumentException("the diagonal of a correlation matrix is fixed");
+        }
+        put(index(i, j), value);
+    }
+
+    /*
+        Value at a position of the packed triangle, (0, 1), (0, 2), ..., (1, 2), ...
+     */
+    double value(int position) {
+        int segment = position >>> shift;
+        int offset = position & ((1 << shift) - 1);
+        return floats != null ? floats[segment].get(offset) : doubles[segment].get(offset);
+    }
+
+    private void put(int position, double value) {
+        int segment = position >>> shift;
+        int offset = position & ((1 << shift) - 1);
+        if (floats != null) {
+            floats[segment].put(offset, (float) value);
+        } else {
+            doubles[segment].put(offset, value);
+        }
+    }
+
+    /*
+        Position of the pair (i, j), i != j, in the packed upper triangle.
+     */
+    int index(int i, int j) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        int n = names.length;
+        return (int) ((long) i * n - (long) i * (i + 1) / 2 + (j - i - 1));
+    }
+
+    @Override
+    public String toString() {
+        return "CorrelationMatrix = features: " + Arrays.toString(names) + ", pairs: " + getNumberOfPairs()
+                + ", precision: " + getPrecision();
+    }
+}
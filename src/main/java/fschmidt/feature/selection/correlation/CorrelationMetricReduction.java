@@ -2,9 +2,13 @@ package fschmidt.feature.selection.correlation;
 
 import fschmidt.feature.selection.graph.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import org.apache.commons.math3.util.Pair;
 
 import static java.util.stream.Collectors.toList;
@@ -17,76 +21,218 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
     private final double maxCorrelation;
     private final List<Pair<List<String>, Double>> recommendedFeatureSets;
     private final Correlation keyCorrelationMethod;
+    private final CliqueEngines cliqueEngine;
+    private final CorrelationCache correlationCache;
+    private double collapseThreshold = Double.NaN;
+    private CorrelationMatrix.Precision precision = CorrelationMatrix.Precision.FLOAT64;
+    private CorrelationClusters clusters;
 
     public CorrelationMetricReduction(Correlation keyCorrelationMethod, double maxCorrelation) {
+        this(keyCorrelationMethod, maxCorrelation, CliqueEngines.BRON_KERBOSCH_PIVOTING);
+    }
+
+    public CorrelationMetricReduction(Correlation keyCorrelationMethod, double maxCorrelation, CliqueEngines cliqueEngine) {
+        this(keyCorrelationMethod, maxCorrelation, cliqueEngine, null);
+    }
+
+    /*
+        With a correlation cache (may be null) the matrix over all features is cached, so that runs with other
+        rankings or thresholds on the same data reuse it. Additional correlations are computed in the same pass
+        as the key correlation (sharing ranks and sort orders) and stored as further edge properties; only the
+        key correlation decides about edges and cliques.
+     */
+    public CorrelationMetricReduction(Correlation keyCorrelationMethod, double maxCorrelation, CliqueEngines cliqueEngine,
+                                      CorrelationCache correlationCache, Correlation... additionalCorrelations) {
+        super(withKey(keyCorrelationMethod, additionalCorrelations));
         this.maxCorrelation = maxCorrelation;
         recommendedFeatureSets = new ArrayList<>();
         this.keyCorrelationMethod = keyCorrelationMethod;
+        this.cliqueEngine = cliqueEngine;
+        this.correlationCache = correlationCache;
     }
 
-    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, String[] header, List<double[]> values) {
-        List<Double> allCorrelationValues = new ArrayList<>();
-        UndirectedGraph baseGraph = new UndirectedGraph();
-        //create baseGraph vertices
-        for (String metricName : rankingValues.keySet()) {
-            double rankingValue = rankingValues.get(metricName);
-            WeightedVertex v = new WeightedVertex(metricName);
-            v.addProperty("ranking", rankingValue);
-            if (!Double.isNaN(rankingValue)) {
-                baseGraph.addVertex(v);
-            }
+    /*
+        Before the graph is built, near-duplicate features (|r| > threshold, e.g. 0.99) with the same neighbourhood
+        at the cut are collapsed into their best ranked representative, only representatives become vertices and
+        the cliques are searched on them. Before the best clique is chosen they are expanded back to the members,
+        so the selection is the one without collapsing. Only applied when the graph is cut below the threshold;
+        the mapping of the last run is available through getClusters().
+     */
+    public CorrelationMetricReduction collapseNearDuplicates(double threshold) {
+        this.collapseThreshold = threshold;
+        return this;
+    }
+
+    /*
+        Precision of the matrices computed by the reduction (also of cached and out-of-core ones), FLOAT32 halves
+        their memory. Matrices passed to run are used as they are.
+     */
+    public CorrelationMetricReduction precision(CorrelationMatrix.Precision precision) {
+        this.precision = precision;
+        return this;
+    }
+
+    /*
+        Near-duplicate groups of the last run, null if nothing was collapsed.
+     */
+    public CorrelationClusters getClusters() {
+        return clusters;
+    }
+
+    private static Correlation[] withKey(Correlation keyCorrelationMethod, Correlation[] additionalCorrelations) {
+        Map<String, Correlation> correlations = new LinkedHashMap<>();
+        correlations.put(keyCorrelationMethod.toString(), keyCorrelationMethod);
+        for (Correlation correlation : additionalCorrelations) {
+            correlations.putIfAbsent(correlation.toString(), correlation);
         }
-        //Calculate correlation between all different pairs of metrics
+        return correlations.values().toArray(new Correlation[0]);
+    }
+
+    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, String[] header, List<double[]> values) {
+        return run(rankingValues, correlationMatrices(rankingValues, header, values));
+    }
+
+    private Map<String, CorrelationMatrix> correlationMatrices(Map<String, Double> rankingValues, String[] header, List<double[]> values) {
+        //Only metrics which become vertices are correlated (all of them if cached), each column is extracted once
+        boolean cached = correlationCache != null && !(keyCorrelationMethod instanceof ThresholdedCorrelation);
+        Map<String, Integer> columnIndices = new LinkedHashMap<>();
         for (int i = 0; i < header.length; i++) {
-            for (int j = 0; j < header.length; j++) {
-                if (i != j && rankingValues.containsKey(header[i]) && rankingValues.containsKey(header[j])) {
-                    double[] vector1 = new double[values.size()];
-                    double[] vector2 = new double[values.size()];
-                    for (int s = 0; s < values.size(); s++) {
-                        vector1[s] = values.get(s)[i];
-                        vector2[s] = values.get(s)[j];
-                    }
-                    if (baseGraph.containsVertex(header[i]) && baseGraph.containsVertex(header[j])) {
-                        WeightedEdge e = baseGraph.addEdge(baseGraph.getVertex(header[i]), baseGraph.getVertex(header[j]));
-                        if (e == null) continue; //Edge already existed
-                        double corrResult = keyCorrelationMethod.correlation(vector1, vector2);
-                        e.addProperty(keyCorrelationMethod.toString(), corrResult);
-                        allCorrelationValues.add(Math.abs(corrResult));
-                    }
-                }
+            Double rankingValue = rankingValues.get(header[i]);
+            if (cached || (rankingValue != null && !Double.isNaN(rankingValue))) {
+                columnIndices.putIfAbsent(header[i], i);
             }
         }
+        String[] names = columnIndices.keySet().toArray(new String[0]);
+        int[] indices = columnIndices.values().stream().mapToInt(Integer::intValue).toArray();
+        double[][] columns = CorrelationMatrices.columns(values, indices);
+        if (!cached) {
+            return matrices(names, columns, precision);
+        }
+        Map<String, CorrelationMatrix> matrices = new LinkedHashMap<>();
+        for (Correlation correlation : getCorrelations()) {
+            matrices.put(correlation.toString(), correlationCache.matrix(correlation, names, columns, precision));
+        }
+        return matrices;
+    }
+
+    /*
+        Streaming input: the Pearson matrix of all rows accumulated so far, nothing is recomputed.
+     */
+    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, CoMomentAccumulator accumulator) {
+        return run(rankingValues, accumulator.pearson());
+    }
+
+    /*
+        Drifting streams: the decay weighted Pearson matrix of the recent rows, e.g. together with the rankings of
+        DecayedClassHistograms.
+     */
+    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, DecayedCoMomentAccumulator accumulator) {
+        return run(rankingValues, accumulator.pearson());
+    }
+
+    /*
+        Out-of-core input: the Pearson matrix of the disk-backed samples is computed tile by tile into matrixFile
+        and memory mapped from there, neither the samples nor the triangle have to fit into the heap.
+     */
+    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, ColumnStore store, Path matrixFile) throws IOException {
+        if (keyCorrelationMethod != Pearson && keyCorrelationMethod != SimplePearson) {
+            throw new IllegalArgumentException("out-of-core correlation is only available for Pearson, not " + keyCorrelationMethod);
+        }
+        return run(rankingValues, CorrelationMatrices.pearson(store, matrixFile, precision));
+    }
+
+    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, CorrelationMatrix matrix) {
+        return run(rankingValues, Map.of(keyCorrelationMethod.toString(), matrix));
+    }
+
+    /*
+        Matrices keyed by correlation name, one of them has to be the key correlation. The matrices are
+        registered as edge weights of the graph, edges carry no boxed correlation values. Lagged correlations
+        additionally register their lags as "<name>.lag".
+     */
+    public List<Pair<List<String>, Double>> run(Map<String, Double> rankingValues, Map<String, CorrelationMatrix> matrices) {
+        CorrelationMatrix matrix = keyMatrix(matrices);
+        double[] allCorrelationValues = absoluteCorrelations(matrix, rankingValues);
 
         //TODO: 0.9 should be maxCorrelation? Not every
-        Collections.sort(allCorrelationValues);
-        int maxCorrelationSize = (int) (allCorrelationValues.size() * 0.9);
-        allCorrelationValues = allCorrelationValues.stream().limit(maxCorrelationSize).collect(toList());
-        if (allCorrelationValues.size() > 0) {
-            if (allCorrelationValues.get(allCorrelationValues.size() - 1) > 0.9) {
-                allCorrelationValues = allCorrelationValues.stream().filter(v -> v <= 0.9).collect(toList());
+        Arrays.sort(allCorrelationValues);
+        int numberOfCorrelationValues = (int) (allCorrelationValues.length * 0.9);
+        if (numberOfCorrelationValues > 0) {
+            if (allCorrelationValues[numberOfCorrelationValues - 1] > 0.9) {
+                //sorted, so the values <= 0.9 are a prefix
+                int atMost = 0;
+                while (atMost < numberOfCorrelationValues && allCorrelationValues[atMost] <= 0.9) {
+                    atMost++;
+                }
+                numberOfCorrelationValues = atMost;
             }
         }
 
         //Only analyze one correlation value (a lot shorter in terms of computation time)
         double corrValue = maxCorrelation;
-        if (allCorrelationValues.size() > 0) {
-            corrValue = allCorrelationValues.get(allCorrelationValues.size() - 1);
+        if (keyCorrelationMethod instanceof ThresholdedCorrelation) {
+            //Values are only exact at this threshold
+            corrValue = ((ThresholdedCorrelation) keyCorrelationMethod).threshold();
+        } else if (numberOfCorrelationValues > 0) {
+            corrValue = allCorrelationValues[numberOfCorrelationValues - 1];
+        }
+
+        //collapse near-duplicates with the same neighbourhood, they are never adjacent below the threshold
+        clusters = null;
+        Map<String, Double> vertexRankings = rankingValues;
+        if (!Double.isNaN(collapseThreshold) && corrValue < collapseThreshold) {
+            clusters = CorrelationClusters.of(matrix, rankingValues, collapseThreshold, corrValue);
+            vertexRankings = clusters.getRepresentativeRankings();
+            System.out.println(String.format("Collapsed %s features into %s representatives (|r| > %s).",
+                    clusters.getNumberOfFeatures(), clusters.getNumberOfClusters(), collapseThreshold));
         }
 
-        //create graph
-        UndirectedGraph graph = createGraph(baseGraph, corrValue);
+        ConcurrentGraphBuilder builder = new ConcurrentGraphBuilder();
+        //create graph vertices
+        for (String metricName : vertexRankings.keySet()) {
+            double rankingValue = vertexRankings.get(metricName);
+            WeightedVertex v = new WeightedVertex(metricName);
+            v.addProperty("ranking", rankingValue);
+            if (!Double.isNaN(rankingValue)) {
+                builder.addVertex(v);
+            }
+        }
+        //Insert the pairs of metrics with |correlation| <= corrValue as edges (NaN never), row by row in parallel
+        double cut = corrValue;
+        IntStream.range(0, matrix.size()).parallel().forEach(i -> {
+            WeightedVertex v1 = builder.getVertex(matrix.getName(i));
+            if (v1 == null) return;
+            for (int j = i + 1; j < matrix.size(); j++) {
+                WeightedVertex v2 = builder.getVertex(matrix.getName(j));
+                if (v2 == null || !(Math.abs(matrix.get(i, j)) <= cut)) continue;
+                builder.addEdge(v1, v2);
+            }
+        });
+        UndirectedGraph graph = builder.build();
+        for (Map.Entry<String, CorrelationMatrix> metric : matrices.entrySet()) {
+            graph.setEdgeWeights(metric.getKey(), metric.getValue());
+            if (metric.getValue() instanceof LaggedCorrelation.Matrix) {
+                graph.setEdgeWeights(metric.getKey() + ".lag", ((LaggedCorrelation.Matrix) metric.getValue()).lags());
+            }
+        }
+
+        GraphStatistics statistics = graph.getStatistics();
         int totalPossibleEdges = graph.getNumberOfVertices() * (graph.getNumberOfVertices() - 1) / 2;
-        System.out.println("Number of Edges in Graph: " + graph.getNumberOfEdges() + " / " + totalPossibleEdges + " total possible edges.");
+        System.out.println("Number of Edges in Graph: " + graph.getNumberOfEdges() + " / " + totalPossibleEdges + " total possible edges."
+                + " Density: " + statistics.getDensity() + ", max clique size <= " + statistics.getCliqueNumberUpperBound() + ".");
 
         //find cliques
         long timeClique1 = System.currentTimeMillis();
         //Clique Finding
-        Set<Set<WeightedVertex>> cliques = CliqueAlgorithm.bronKerboschPivoting(graph);
+        Set<Set<WeightedVertex>> cliques = cliqueEngine.cliques(graph);
         long timeClique2 = System.currentTimeMillis();
         long timeClique = timeClique2 - timeClique1;
         System.out.println(String.format("Found %s cliques. Clique algorithm needed: %s ms.", cliques.size(), timeClique));
+        if (clusters != null) {
+            cliques = expand(cliques, graph, matrix, rankingValues, corrValue);
+        }
 
-        Set<WeightedVertex> bestClique = findBestClique(cliques, graph, 1);
+        Set<WeightedVertex> bestClique = findBestClique(cliques, graph, keyCorrelationMethod.toString(), 1).getFirst();
 
         //TODO: currently for testing how to choose the best correlation by checking the ranking result values. (next also to test: how the results might influence the algorithmic anomaly detection result)
         Pair<List<String>, Double> featureSet = new Pair<>(featureSetArrayList(bestClique), corrValue);
@@ -95,6 +241,140 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
         return recommendedFeatureSets;
     }
 
+    /*
+        Adds the collapsed members with their edges at the cut back to the graph and replaces every clique of the
+        largest size (only those can be chosen) by all cliques with representatives swapped for members of their
+        group, prod |group| per clique.
+     */
+    private Set<Set<WeightedVertex>> expand(Set<Set<WeightedVertex>> cliques, UndirectedGraph graph, CorrelationMatrix matrix,
+                                            Map<String, Double> rankingValues, double cut) {
+        List<Integer> added = new ArrayList<>();
+        for (Map.Entry<String, String> member : clusters.getRepresentatives().entrySet()) {
+            if (member.getKey().equals(member.getValue())) continue;
+            WeightedVertex v = new WeightedVertex(member.getKey());
+            v.addProperty("ranking", rankingValues.get(member.getKey()));
+            graph.addVertex(v);
+            added.add(matrix.indexOf(member.getKey()));
+        }
+        for (int i : added) {
+            WeightedVertex v1 = graph.getVertex(matrix.getName(i));
+            for (int j = 0; j < matrix.size(); j++) {
+                WeightedVertex v2 = j == i ? null : graph.getVertex(matrix.getName(j));
+                if (v2 != null && Math.abs(matrix.get(i, j)) <= cut) {
+                    graph.addEdge(v1, v2);
+                }
+            }
+        }
+
+        int biggestSize = cliques.stream().mapToInt(Set::size).max().orElse(0);
+        Set<Set<WeightedVertex>> expanded = new HashSet<>();
+        for (Set<WeightedVertex> clique : cliques) {
+            if (clique.size() < biggestSize) continue;
+            List<Set<WeightedVertex>> partial = new ArrayList<>();
+            partial.add(new HashSet<>());
+            for (WeightedVertex representative : clique) {
+                List<Set<WeightedVertex>> next = new ArrayList<>();
+                for (String member : clusters.getMembers(representative.getName())) {
+                    for (Set<WeightedVertex> prefix : partial) {
+                        Set<WeightedVertex> extended = new HashSet<>(prefix);
+                        extended.add(graph.getVertex(member));
+                        next.add(extended);
+                    }
+                }
+                partial = next;
+            }
+            expanded.addAll(partial);
+        }
+        return expanded;
+    }
+
+    /*
+        |correlation| of every pair of ranked features (the vertices before collapsing), read from the packed matrix.
+     */
+    private static double[] absoluteCorrelations(CorrelationMatrix matrix, Map<String, Double> rankingValues) {
+        int[] vertexIndices = IntStream.range(0, matrix.size()).filter(i -> {
+            Double rankingValue = rankingValues.get(matrix.getName(i));
+            return rankingValue != null && !Double.isNaN(rankingValue);
+        }).toArray();
+        double[] values = new double[(int) ((long) vertexIndices.length * (vertexIndices.length - 1) / 2)];
+        int p = 0;
+        for (int a = 0; a < vertexIndices.length; a++) {
+            for (int b = a + 1; b < vertexIndices.length; b++) {
+                values[p++] = Math.abs(matrix.get(vertexIndices[a], vertexIndices[b]));
+            }
+        }
+        return values;
+    }
+
+    public List<SweepPoint> sweep(Map<String, Double> rankingValues, String[] header, List<double[]> values, double... thresholds) {
+        return sweep(rankingValues, keyMatrix(correlationMatrices(rankingValues, header, values)), thresholds);
+    }
+
+    /*
+        Selection for every threshold in one pass: the |correlations| are sorted once, the thresholds are visited in
+        ascending order and each one only adds the edges between the previous and the current threshold to the graph,
+        then the cliques are searched. Returns one point per threshold, ordered by threshold.
+     */
+    public List<SweepPoint> sweep(Map<String, Double> rankingValues, CorrelationMatrix matrix, double... thresholds) {
+        UndirectedGraph graph = new UndirectedGraph();
+        for (String metricName : rankingValues.keySet()) {
+            double rankingValue = rankingValues.get(metricName);
+            if (!Double.isNaN(rankingValue)) {
+                WeightedVertex v = new WeightedVertex(metricName);
+                v.addProperty("ranking", rankingValue);
+                graph.addVertex(v);
+            }
+        }
+        graph.setEdgeWeights(keyCorrelationMethod.toString(), matrix);
+        //all candidate edges as primitive arrays, NaN correlations never become edges
+        int maxPairs = matrix.getNumberOfPairs();
+        int[] first = new int[maxPairs];
+        int[] second = new int[maxPairs];
+        double[] absCorrelations = new double[maxPairs];
+        int numberOfPairs = 0;
+        for (int i = 0; i < matrix.size(); i++) {
+            if (!graph.containsVertex(matrix.getName(i))) continue;
+            for (int j = i + 1; j < matrix.size(); j++) {
+                double correlation = matrix.get(i, j);
+                if (graph.containsVertex(matrix.getName(j)) && !Double.isNaN(correlation)) {
+                    first[numberOfPairs] = i;
+                    second[numberOfPairs] = j;
+                    absCorrelations[numberOfPairs] = Math.abs(correlation);
+                    numberOfPairs++;
+                }
+            }
+        }
+        int[] order = new int[numberOfPairs];
+        for (int p = 0; p < numberOfPairs; p++) {
+            order[p] = p;
+        }
+        IntArrays.quickSort(order, (a, b) -> Double.compare(absCorrelations[a], absCorrelations[b]));
+
+        double[] sortedThresholds = thresholds.clone();
+        Arrays.sort(sortedThresholds);
+        List<SweepPoint> curve = new ArrayList<>();
+        int next = 0;
+        for (double threshold : sortedThresholds) {
+            while (next < numberOfPairs && absCorrelations[order[next]] <= threshold) {
+                int p = order[next++];
+                graph.addEdge(graph.getVertex(matrix.getName(first[p])), graph.getVertex(matrix.getName(second[p])));
+            }
+            Set<Set<WeightedVertex>> cliques = cliqueEngine.cliques(graph);
+            Pair<Set<WeightedVertex>, Double> bestClique = findBestClique(cliques, graph, keyCorrelationMethod.toString(), 1);
+            curve.add(new SweepPoint(threshold, featureSetArrayList(bestClique.getFirst()), bestClique.getSecond(),
+                    graph.getNumberOfEdges(), cliques.size()));
+        }
+        return curve;
+    }
+
+    private CorrelationMatrix keyMatrix(Map<String, CorrelationMatrix> matrices) {
+        CorrelationMatrix matrix = matrices.get(keyCorrelationMethod.toString());
+        if (matrix == null) {
+            throw new IllegalArgumentException("no " + keyCorrelationMethod + " matrix in " + matrices.keySet());
+        }
+        return matrix;
+    }
+
     private Set<String> featureSet(Set<WeightedVertex> vertices) {
         Set<String> features = new HashSet<>();
         for (WeightedVertex vertice : vertices) {
@@ -111,16 +391,11 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
         return features;
     }
 
-    private UndirectedGraph createGraph(UndirectedGraph baseGraph, double maxCorrelation) {
-        UndirectedGraph graph = baseGraph.copy();
-        graph.removeWeightedEdges(keyCorrelationMethod.toString(), maxCorrelation);
-        return graph;
-    }
-
     /*
-        Max clique with min avg ranked value
+        Max clique with min avg ranked value, together with its score. Correlations are read under the key.
      */
-    private Set<WeightedVertex> findBestClique(Set<Set<WeightedVertex>> cliques, UndirectedGraph graph, int dimensionSearchDepth) {
+    static Pair<Set<WeightedVertex>, Double> findBestClique(Set<Set<WeightedVertex>> cliques, UndirectedGraph graph, String key,
+                                                            int dimensionSearchDepth) {
         Set<WeightedVertex> bestClique = new HashSet<>();
         double bestCliqueValue = Double.MIN_VALUE;
 
@@ -135,7 +410,7 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
             if (clique.size() > biggestSize - dimensionSearchDepth) {
                 double currentCliqueDistanceValue = avgVertexWeightValue(clique, "ranking");
                 List<String> list = clique.stream().map(WeightedVertex::getName).collect(toList());
-                double currentCliqueCorrelationValue = graph.getAverageCorrelation(list, "pearson");
+                double currentCliqueCorrelationValue = graph.getAverageCorrelation(list, key);
                 double currentCliqueValue = 1 - currentCliqueCorrelationValue + currentCliqueDistanceValue;
 
                 if (currentCliqueValue > bestCliqueValue) {
@@ -144,10 +419,10 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
                 }
             }
         }
-        return bestClique;
+        return new Pair<>(bestClique, bestCliqueValue);
     }
 
-    private double avgVertexWeightValue(Set<WeightedVertex> vSet, String key) {
+    private static double avgVertexWeightValue(Set<WeightedVertex> vSet, String key) {
         double result = 0.0;
         for (WeightedVertex v : vSet) {
             result += (Double) v.getProperty(key);
@@ -175,52 +450,6 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
         return result;
     }
 
-    private double avgEdgeWeightValue(Set<WeightedVertex> vSet, String key) {
-        double result = 0.0;
-        if (!vSet.isEmpty()) {
-            WeightedVertex v = vSet.iterator().next();
-            for (WeightedEdge e : v.getEdges().values()) {
-                double corr = (Double) e.getProperty(key);
-                result += corr;
-            }
-        } else {
-            return result;
-        }
-        return result / vSet.size();
-    }
-
-    private double maxEdgeWeightValue(Set<WeightedVertex> vSet, String key) {
-        double result = Double.MIN_VALUE;
-        if (!vSet.isEmpty()) {
-            WeightedVertex v = vSet.iterator().next();
-            for (WeightedEdge e : v.getEdges().values()) {
-                double corr = (Double) e.getProperty(key);
-                if (result < corr) {
-                    result = corr;
-                }
-            }
-        } else {
-            return 0.0;
-        }
-        return result;
-    }
-
-    private double minEdgeWeightValue(Set<WeightedVertex> vSet, String key) {
-        double result = Double.MAX_VALUE;
-        if (!vSet.isEmpty()) {
-            WeightedVertex v = vSet.iterator().next();
-            for (WeightedEdge e : v.getEdges().values()) {
-                double corr = (Double) e.getProperty(key);
-                if (result > corr) {
-                    result = corr;
-                }
-            }
-        } else {
-            return 0.0;
-        }
-        return result;
-    }
-
     private Set<Set<WeightedVertex>> uniquify(Set<Set<WeightedVertex>> allCliques, int dimensionSearchDepth) {
         Set<Set<WeightedVertex>> uniquifiedCliques = new HashSet<>();
         Set<List<WeightedVertex>> uniqueCliques = new HashSet<>();
@@ -242,4 +471,56 @@ public class CorrelationMetricReduction extends CorrelationAlgorithm {
 
         return uniquifiedCliques;
     }
+
+    // ----------------------------------------------
+    //  SWEEP POINT.
+    // ----------------------------------------------
+    // Recommended feature set of one threshold of a
+    // sweep, score as in findBestClique.
+    public static class SweepPoint {
+
+        private final double threshold;
+        private final List<String> features;
+        private final double score;
+        private final int numberOfEdges;
+        private final int numberOfCliques;
+
+        SweepPoint(double threshold, List<String> features, double score, int numberOfEdges, int numberOfCliques) {
+            this.threshold = threshold;
+            this.features = Collections.unmodifiableList(features);
+            this.score = score;
+            this.numberOfEdges = numberOfEdges;
+            this.numberOfCliques = numberOfCliques;
+        }
+
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public List<String> getFeatures() {
+            return features;
+        }
+
+        public int getCliqueSize() {
+            return features.size();
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public int getNumberOfEdges() {
+            return numberOfEdges;
+        }
+
+        public int getNumberOfCliques() {
+            return numberOfCliques;
+        }
+
+        @Override
+        public String toString() {
+            return "SweepPoint = threshold: " + threshold + ", clique size: " + features.size() + ", score: " + score
+                    + ", features: " + features;
+        }
+    }
 }
@@ -0,0 +1,203 @@
+package fschmidt.feature.selection.correlation;
+
+import java.util.Arrays;
+
+// ----------------------------------------------
+//  DECAYED CO-MOMENT ACCUMULATOR.
+// ----------------------------------------------
+// Like the CoMomentAccumulator, but for drifting
+// streams: every row is weighted with
+// 2^(-age / halfLife), so the Pearson matrix
+// describes the recent behaviour instead of the
+// whole history. With the decay factor
+// lambda = 2^(-(t - t_last) / halfLife) the
+// weighted Welford update of a row is
+//
+//     W' = lambda W + 1
+//     mean_i += delta_i / W'
+//     C_ij = lambda C_ij + delta_i delta_j lambda W / W'
+//
+// i.e. still O(1) per pair and nothing has to be
+// rescanned. Time is either the number of added
+// rows or an explicit timestamp (non-decreasing,
+// same unit as the half-life). Not thread-safe.
+//
+// @author fschmidt
+//
+public class DecayedCoMomentAccumulator {
+
+    private final String[] names;
+    private final double halfLife;
+    private final double[] means;
+    // packed upper triangle including the diagonal (weighted sums of squares)
+    private final double[] coMoments;
+    private final double[] delta;
+    private double weight;
+    private double time = Double.NaN;
+
+    public DecayedCoMomentAccumulator(String[] names, double halfLife) {
+        if (!(halfLife > 0.0)) {
+            throw new IllegalArgumentException("halfLife must be positive, got " + halfLife);
+        }
+        this.names = names.clone();
+        this.halfLife = halfLife;
+        this.means = new double[names.length];
+        this.coMoments = new double[names.length * (names.length + 1) / 2];
+        this.delta = new double[names.length];
+    }
+
+    /*
+        Adds one row one time unit after the previous one.
+     */
+    public DecayedCoMomentAccumulator add(double[] row) {
+        return add(row, Double.isNaN(time) ? 0.0 : time + 1.0);
+    }
+
+    /*
+        Adds one row observed at the given time, values in the order of the names.
+     */
+    public DecayedCoMomentAccumulator add(double[] row, double time) {
+        if (row.length != names.length) {
+            throw new IllegalArgumentException("expected " + names.length + " values, got " + row.length);
+        }
+        double decay = advanceTo(time);
+        double decayedWeight = decay * weight;
+        weight = decayedWeight + 1.0;
+        for (int i = 0; i < row.length; i++) {
+            delta[i] = row[i] - means[i];
+            means[i] += delta[i] / weight;
+        }
+        double scale = decayedWeight / weight;
+        int k = 0;
+        for (int i = 0; i < row.length; i++) {
+            double di = delta[i] * scale;
+            for (int j = i; j < row.length; j++) {
+                coMoments[k] = decay * coMoments[k] + di * delta[j];
+                k++;
+            }
+        }
+        return this;
+    }
+
+    /*
+        Adds the given columns of a (wider) row, e.g. a row of the dataset with header indices.
+     */
+    public DecayedCoMomentAccumulator add(double[] row, int[] indices, double time) {
+        double[] values = new double[indices.length];
+        for (int c = 0; c < indices.length; c++) {
+            values[c] = row[indices[c]];
+        }
+        return add(values, time);
+    }
+
+    /*
+        Adds all statistics of other (e.g. another shard of the stream) to this accumulator, both are decayed to the
+        later of the two times first. Other is unchanged.
+     */
+    public DecayedCoMomentAccumulator merge(DecayedCoMomentAccumulator other) {
+        if (!Arrays.equals(names, other.names) || halfLife != other.halfLife) {
+            throw new IllegalArgumentException("accumulators over different features or half-lives cannot be merged");
+        }
+        if (other.weight == 0.0) {
+            return this;
+        }
+        double now = Double.isNaN(time) ? other.time : Math.max(time, other.time);
+        double decay = advanceTo(now);
+        double otherDecay = Math.pow(2.0, -(now - other.time) / halfLife);
+        double thisWeight = decay * weight;
+        double otherWeight = otherDecay * other.weight;
+        double total = thisWeight + otherWeight;
+        for (int i = 0; i < names.length; i++) {
+            delta[i] = other.means[i] - means[i];
+        }
+        double cross = thisWeight * otherWeight / total;
+        int k = 0;
+        for (int i = 0; i < names.length; i++) {
+            for (int j = i; j < names.length; j++) {
+                coMoments[k] = decay * coMoments[k] + otherDecay * other.coMoments[k] + delta[i] * delta[j] * cross;
+                k++;
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            means[i] += delta[i] * otherWeight / total;
+        }
+        weight = total;
+        return this;
+    }
+
+    // moves the clock, returns the decay factor of everything seen so far
+    private double advanceTo(double now) {
+        if (Double.isNaN(time)) {
+            time = now;
+            return 1.0;
+        }
+        if (now < time) {
+            throw new IllegalArgumentException("time must not decrease, got " + now + " after " + time);
+        }
+        double decay = Math.pow(2.0, -(now - time) / halfLife);
+        time = now;
+        return decay;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public double getHalfLife() {
+        return halfLife;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    /*
+        Sum of the decayed row weights at the time of the last row, at most 1 / (1 - 2^(-1 / halfLife)) rows.
+     */
+    public double getEffectiveCount() {
+        return weight;
+    }
+
+    public double getMean(int i) {
+        return weight == 0.0 ? Double.NaN : means[i];
+    }
+
+    /*
+        Decay weighted covariance of features i and j.
+     */
+    public double getCovariance(int i, int j) {
+        return weight == 0.0 ? Double.NaN : coMoments[index(i, j)] / weight;
+    }
+
+    /*
+        Decay weighted Pearson correlation matrix. It does not change without new rows: the decay scales all
+        co-moments alike. Constant features give NaN.
+     */
+    public CorrelationMatrix pearson() {
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        for (int i = 0; i < names.length; i++) {
+            double sii = coMoments[index(i, i)];
+            for (int j = i + 1; j < names.length; j++) {
+                double sjj = coMoments[index(j, j)];
+                double r = sii > 0.0 && sjj > 0.0 ? coMoments[index(i, j)] / Math.sqrt(sii * sjj) : Double.NaN;
+                matrix.set(i, j, Math.max(-1.0, Math.min(1.0, r)));
+            }
+        }
+        return matrix;
+    }
+
+    private int index(int i, int j) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return i * names.length - i * (i - 1) / 2 + (j - i);
+    }
+
+    @Override
+    public String toString() {
+        return "DecayedCoMomentAccumulator = features: " + names.length + ", half-life: " + halfLife
+                + ", effective rows: " + weight;
+    }
+}
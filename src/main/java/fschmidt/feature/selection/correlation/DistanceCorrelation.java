@@ -0,0 +1,172 @@
+package fschmidt.feature.selection.correlation;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  DISTANCE CORRELATION.
+// ----------------------------------------------
+// Distance correlation (Szekely et al.) in [0, 1],
+// zero only for independent features, so it also
+// finds nonlinear redundancy. With the distances
+// a_st = |x_s - x_t|, b_st = |y_s - y_t|, their
+// row sums a_s., b_s. and totals a.., b.. the
+// (V-statistic) distance covariance is
+//
+//     dCov^2 = sum a_st b_st / n^2
+//              - 2 sum a_s. b_s. / n^3
+//              + a.. b.. / n^4
+//
+// Row sums come from the sort order of a column in
+// O(n), the first sum with the O(n log n) algorithm
+// of Huo and Szekely: walking through the samples
+// in x order, Fenwick trees over the y ranks hold
+// count, sum x, sum y and sum xy of the samples
+// already seen, which splits their products by the
+// sign of y_s - y_t. Standardised values, orders,
+// dense ranks, row sums and distance variances are
+// computed once per column and shared by all pairs,
+// rows of the triangle run in parallel. Constant
+// features give NaN.
+//
+// @author fschmidt
+//
+public class DistanceCorrelation implements CorrelationAlgorithm.Correlation, SharedColumnsCorrelation {
+
+    public double correlation(double[] x, double[] y) {
+        return matrix(new String[]{"x", "y"}, new double[][]{x, y}).get(0, 1);
+    }
+
+    public CorrelationMatrix matrix(String[] names, double[][] columns) {
+        return matrix(names, new SharedColumns(columns));
+    }
+
+    public CorrelationMatrix matrix(String[] names, SharedColumns shared) {
+        // distance correlation is invariant to shift and scale, unit length columns keep the sums small
+        double[][] z = shared.standardised();
+        int[][] orders = shared.orders();
+        int[][] ranks = shared.denseRanks();
+        int d = z.length;
+        int n = shared.numberOfSamples();
+
+        double[][] rowSums = new double[d][];
+        double[] totals = new double[d];
+        double[] variances = new double[d];
+        IntStream.range(0, d).parallel().forEach(c -> {
+            if (n == 0 || Double.isNaN(z[c][0])) return;
+            rowSums[c] = rowSums(z[c], orders[c]);
+            double total = 0.0;
+            double sum = 0.0;
+            double sumOfSquares = 0.0;
+            for (int s = 0; s < n; s++) {
+                total += rowSums[c][s];
+                sum += z[c][s];
+                sumOfSquares += z[c][s] * z[c][s];
+            }
+            totals[c] = total;
+            // sum a_st^2 = 2 n sum x^2 - 2 (sum x)^2
+            double squaredDistances = 2.0 * n * sumOfSquares - 2.0 * sum * sum;
+            variances[c] = distanceCovariance(squaredDistances, rowSums[c], rowSums[c], total, total, n);
+        });
+
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        IntStream.range(0, d).parallel().forEach(i -> {
+            double[][] trees = new double[4][n + 1];
+            for (int j = i + 1; j < d; j++) {
+                if (rowSums[i] == null || rowSums[j] == null || !(variances[i] > 0.0) || !(variances[j] > 0.0)) {
+                    matrix.set(i, j, Double.NaN);
+                    continue;
+                }
+                double productSum = productSum(z[i], z[j], orders[i], ranks[j], trees);
+                double covariance = distanceCovariance(productSum, rowSums[i], rowSums[j], totals[i], totals[j], n);
+                double r2 = covariance / Math.sqrt(variances[i] * variances[j]);
+                matrix.set(i, j, Math.sqrt(Math.max(0.0, Math.min(1.0, r2))));
+            }
+        });
+        return matrix;
+    }
+
+    // a_s. = sum_t |x_s - x_t| for every sample from the sorted order and prefix sums
+    private static double[] rowSums(double[] x, int[] order) {
+        int n = x.length;
+        double total = 0.0;
+        for (double v : x) {
+            total += v;
+        }
+        double[] sums = new double[n];
+        double below = 0.0;
+        for (int p = 0; p < n; p++) {
+            int s = order[p];
+            double v = x[s];
+            // p values below, n - 1 - p above (ties contribute zero either way)
+            double above = total - below - v;
+            sums[s] = v * p - below + above - v * (n - 1 - p);
+            below += v;
+        }
+        return sums;
+    }
+
+    /*
+        sum over all ordered pairs of |x_s - x_t| |y_s - y_t| in O(n log n), samples visited in x order. For the
+        samples t seen before s, (x_s - x_t) >= 0, so the product is +-(x_s - x_t)(y_s - y_t) depending on y_t <= y_s:
+        2 * (sum over y_t <= y_s) - (sum over all t), both from count, sum x, sum y and sum xy.
+     */
+    private static double productSum(double[] x, double[] y, int[] orderX, int[] ranksY, double[][] trees) {
+        int n = x.length;
+        for (double[] tree : trees) {
+            Arrays.fill(tree, 0.0);
+        }
+        double[] counts = trees[0];
+        double[] sumsX = trees[1];
+        double[] sumsY = trees[2];
+        double[] sumsXY = trees[3];
+        double allX = 0.0;
+        double allY = 0.0;
+        double allXY = 0.0;
+        double sum = 0.0;
+        for (int p = 0; p < n; p++) {
+            int s = orderX[p];
+            double xs = x[s];
+            double ys = y[s];
+            int rank = ranksY[s] + 1;
+            double count = 0.0;
+            double lowerX = 0.0;
+            double lowerY = 0.0;
+            double lowerXY = 0.0;
+            for (int k = rank; k > 0; k -= k & -k) {
+                count += counts[k];
+                lowerX += sumsX[k];
+                lowerY += sumsY[k];
+                lowerXY += sumsXY[k];
+            }
+            double lower = count * xs * ys - xs * lowerY - ys * lowerX + lowerXY;
+            double all = p * xs * ys - xs * allY - ys * allX + allXY;
+            sum += 2.0 * lower - all;
+            for (int k = rank; k <= n; k += k & -k) {
+                counts[k] += 1.0;
+                sumsX[k] += xs;
+                sumsY[k] += ys;
+                sumsXY[k] += xs * ys;
+            }
+            allX += xs;
+            allY += ys;
+            allXY += xs * ys;
+        }
+        // every unordered pair twice
+        return 2.0 * sum;
+    }
+
+    private static double distanceCovariance(double productSum, double[] rowSumsX, double[] rowSumsY,
+                                             double totalX, double totalY, int n) {
+        double rowProducts = 0.0;
+        for (int s = 0; s < n; s++) {
+            rowProducts += rowSumsX[s] * rowSumsY[s];
+        }
+        double n2 = (double) n * n;
+        return productSum / n2 - 2.0 * rowProducts / (n2 * n) + totalX * totalY / (n2 * n2);
+    }
+
+    public String toString() {
+        return "distanceCorrelation";
+    }
+}
@@ -0,0 +1,316 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.Kernels;
+import fschmidt.feature.selection.graph.CliqueEngines;
+import fschmidt.feature.selection.graph.EdgeWeights;
+import fschmidt.feature.selection.graph.UndirectedGraph;
+import fschmidt.feature.selection.graph.WeightedVertex;
+import fschmidt.feature.selection.ranking.BinTargetFeatureRanker;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.apache.commons.math3.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ----------------------------------------------
+//  INCREMENTAL CORRELATION REDUCTION.
+// ----------------------------------------------
+// Selector state for a changing set of features
+// over fixed samples (ground truth). Adding a
+// feature ranks only the new column and computes
+// its d Pearson correlations, O(d n); the graph at
+// the fixed threshold gets one vertex and its
+// edges. The maximal cliques are patched locally:
+//
+//  - add v:    cliques inside N(v) are no longer
+//              maximal, the new ones are v plus the
+//              maximal cliques of G[N(v)]
+//  - remove v: cliques with v are dropped, the
+//              maximal cliques of G[N(v)] that no
+//              other vertex extends take their place
+//
+// so the clique engine only runs on the
+// neighbourhood of the changed vertex. The
+// selection is the best clique as in the
+// CorrelationMetricReduction. Features below the
+// minimum ranking (or NaN) do not become vertices;
+// a top-k filter would not be incremental. The
+// correlations are a mutable edge weight column of
+// the graph, edges carry no boxed values. Not
+// thread-safe.
+//
+// @author fschmidt
+//
+public class IncrementalCorrelationReduction {
+
+    private static final String KEY = CorrelationAlgorithm.Pearson.toString();
+
+    private final boolean[] groundTruth;
+    private final BinTargetFeatureRanker<?> ranker;
+    private final double maxCorrelation;
+    private final double minimumRanking;
+    private final CliqueEngines cliqueEngine;
+    private final Map<String, double[]> standardised;
+    private final Map<String, Double> rankings;
+    private final UndirectedGraph graph;
+    private final Correlations correlations;
+    private final Set<Set<WeightedVertex>> cliques;
+    private int lastNeighbourhoodSize;
+
+    public IncrementalCorrelationReduction(List<Boolean> groundTruth, BinTargetFeatureRanker<?> ranker, double maxCorrelation,
+                                           double minimumRanking, CliqueEngines cliqueEngine) {
+        this.groundTruth = new boolean[groundTruth.size()];
+        for (int s = 0; s < groundTruth.size(); s++) {
+            this.groundTruth[s] = groundTruth.get(s);
+        }
+        this.ranker = ranker;
+        this.maxCorrelation = maxCorrelation;
+        this.minimumRanking = minimumRanking;
+        this.cliqueEngine = cliqueEngine;
+        this.standardised = new LinkedHashMap<>();
+        this.rankings = new LinkedHashMap<>();
+        this.graph = new UndirectedGraph();
+        this.correlations = new Correlations();
+        this.graph.setEdgeWeights(KEY, correlations);
+        this.cliques = new HashSet<>();
+    }
+
+    /*
+        Ranks the column and, if it is ranked high enough, adds it to the graph. Returns whether it became a vertex.
+     */
+    public boolean addFeature(String name, double[] column) {
+        if (column.length != groundTruth.length) {
+            throw new IllegalArgumentException("expected " + groundTruth.length + " values, got " + column.length);
+        }
+        if (rankings.containsKey(name)) {
+            throw new IllegalArgumentException("feature " + name + " already exists");
+        }
+        double ranking = rank(column);
+        rankings.put(name, ranking);
+        if (Double.isNaN(ranking) || ranking < minimumRanking) {
+            return false;
+        }
+
+        double[] z = CorrelationMatrices.standardise(new double[][]{column})[0];
+        WeightedVertex vertex = new WeightedVertex(name);
+        vertex.addProperty("ranking", ranking);
+        graph.addVertex(vertex);
+        correlations.addVertex(name);
+        for (Map.Entry<String, double[]> other : standardised.entrySet()) {
+            double r = Double.isNaN(z[0]) || Double.isNaN(other.getValue()[0])
+                    ? Double.NaN : Math.max(-1.0, Math.min(1.0, Kernels.dot(z, other.getValue())));
+            if (Math.abs(r) <= maxCorrelation) {
+                // the weight has to be in the column before the edge, the statistics read it on insertion
+                correlations.put(name, other.getKey(), r);
+                graph.addEdge(vertex, graph.getVertex(other.getKey()));
+            }
+        }
+        standardised.put(name, z);
+
+        Set<WeightedVertex> neighbours = vertex.getNeighbors();
+        cliques.removeIf(neighbours::containsAll);
+        for (Set<WeightedVertex> clique : neighbourhoodCliques(neighbours)) {
+            Set<WeightedVertex> withVertex = new HashSet<>(clique);
+            withVertex.add(vertex);
+            if (isMaximal(withVertex)) {
+                cliques.add(withVertex);
+            }
+        }
+        lastNeighbourhoodSize = neighbours.size();
+        return true;
+    }
+
+    /*
+        Removes the feature and its vertex. Returns whether the feature was known.
+     */
+    public boolean removeFeature(String name) {
+        if (rankings.remove(name) == null) {
+            return false;
+        }
+        WeightedVertex vertex = graph.getVertex(name);
+        if (vertex == null) {
+            return true;
+        }
+        Set<WeightedVertex> neighbours = new HashSet<>(vertex.getNeighbors());
+        standardised.remove(name);
+        graph.removeVertex(vertex);
+        correlations.removeVertex(name, neighbours);
+
+        cliques.removeIf(clique -> clique.contains(vertex));
+        for (Set<WeightedVertex> clique : neighbourhoodCliques(neighbours)) {
+            if (isMaximal(clique)) {
+                cliques.add(clique);
+            }
+        }
+        lastNeighbourhoodSize = neighbours.size();
+        return true;
+    }
+
+    /*
+        Best clique of the current graph and the threshold, in the format of CorrelationMetricReduction.run.
+     */
+    public Pair<List<String>, Double> getRecommendedFeatureSet() {
+        Set<WeightedVertex> bestClique = CorrelationMetricReduction.findBestClique(cliques, graph, KEY, 1).getFirst();
+        List<String> features = new ArrayList<>();
+        for (WeightedVertex vertex : bestClique) {
+            features.add(vertex.getName());
+        }
+        return new Pair<>(features, maxCorrelation);
+    }
+
+    // ranking of one column, like the BinTargetFeatureRanker on all of them
+    private double rank(double[] column) {
+        int positives = 0;
+        for (boolean target : groundTruth) {
+            if (target) positives++;
+        }
+        double[] trueValues = new double[positives];
+        double[] falseValues = new double[groundTruth.length - positives];
+        int t = 0;
+        int f = 0;
+        for (int s = 0; s < column.length; s++) {
+            if (groundTruth[s]) {
+                trueValues[t++] = column[s];
+            } else {
+                falseValues[f++] = column[s];
+            }
+        }
+        return trueValues.length == 0 || falseValues.length == 0 ? Double.NaN : ranker.getDistance(trueValues, falseValues);
+    }
+
+    // maximal cliques of the subgraph induced by the vertices (as vertices of the graph), one empty clique if none
+    private Set<Set<WeightedVertex>> neighbourhoodCliques(Set<WeightedVertex> vertices) {
+        Set<Set<WeightedVertex>> result = new HashSet<>();
+        if (vertices.isEmpty()) {
+            result.add(new HashSet<>());
+            return result;
+        }
+        UndirectedGraph induced = new UndirectedGraph();
+        for (WeightedVertex v : vertices) {
+            induced.addVertex(new WeightedVertex(v.getName()));
+        }
+        for (WeightedVertex v : vertices) {
+            for (WeightedVertex u : v.getNeighbors()) {
+                if (vertices.contains(u) && v.getName().compareTo(u.getName()) < 0) {
+                    induced.addEdge(induced.getVertex(v.getName()), induced.getVertex(u.getName()));
+                }
+            }
+        }
+        for (Set<WeightedVertex> clique : cliqueEngine.cliques(induced)) {
+            Set<WeightedVertex> mapped = new HashSet<>();
+            for (WeightedVertex v : clique) {
+                mapped.add(graph.getVertex(v.getName()));
+            }
+            result.add(mapped);
+        }
+        return result;
+    }
+
+    // no vertex of the graph is adjacent to all vertices of the clique (some engines also report non-maximal ones)
+    private boolean isMaximal(Set<WeightedVertex> clique) {
+        if (clique.isEmpty()) {
+            return false;
+        }
+        WeightedVertex smallest = Collections.min(clique, (a, b) -> Integer.compare(a.getNeighbors().size(), b.getNeighbors().size()));
+        for (WeightedVertex candidate : smallest.getNeighbors()) {
+            if (clique.contains(candidate)) continue;
+            boolean extendable = true;
+            for (WeightedVertex member : clique) {
+                if (member != smallest && !member.getNeighbors().contains(candidate)) {
+                    extendable = false;
+                    break;
+                }
+            }
+            if (extendable) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public double getMaxCorrelation() {
+        return maxCorrelation;
+    }
+
+    /*
+        Rankings of all known features, also of those below the minimum ranking.
+     */
+    public Map<String, Double> getRankings() {
+        return Collections.unmodifiableMap(rankings);
+    }
+
+    public UndirectedGraph getGraph() {
+        return graph;
+    }
+
+    /*
+        Neighbours of the vertex that was added or removed last, the size of the subgraph the clique engine searched.
+     */
+    public int getLastNeighbourhoodSize() {
+        return lastNeighbourhoodSize;
+    }
+
+    /*
+        Current maximal cliques of the graph.
+     */
+    public Set<Set<WeightedVertex>> getCliques() {
+        return Collections.unmodifiableSet(cliques);
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalCorrelationReduction = features: " + rankings.size() + ", vertices: " + graph.getNumberOfVertices()
+                + ", edges: " + graph.getNumberOfEdges() + ", cliques: " + cliques.size();
+    }
+
+    // ----------------------------------------------
+    //  CORRELATIONS.
+    // ----------------------------------------------
+    // Mutable edge weight column. Every vertex gets
+    // a slot, the correlation of an edge is stored
+    // under both slots packed into one long. Slots
+    // are not reused, a removed vertex only takes
+    // the entries of its edges with it.
+    //
+    private static class Correlations implements EdgeWeights {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final Long2DoubleOpenHashMap values = new Long2DoubleOpenHashMap();
+        private int nextSlot;
+
+        Correlations() {
+            values.defaultReturnValue(Double.NaN);
+        }
+
+        void addVertex(String name) {
+            slots.put(name, nextSlot++);
+        }
+
+        void put(String vertex1, String vertex2, double correlation) {
+            values.put(pair(slots.get(vertex1), slots.get(vertex2)), correlation);
+        }
+
+        void removeVertex(String name, Set<WeightedVertex> neighbours) {
+            int slot = slots.remove(name);
+            for (WeightedVertex neighbour : neighbours) {
+                values.remove(pair(slot, slots.get(neighbour.getName())));
+            }
+        }
+
+        public double getWeight(String vertex1, String vertex2) {
+            Integer slot1 = slots.get(vertex1);
+            Integer slot2 = slots.get(vertex2);
+            return slot1 == null || slot2 == null ? Double.NaN : values.get(pair(slot1, slot2));
+        }
+
+        private static long pair(int slot1, int slot2) {
+            return slot1 < slot2 ? (long) slot1 << 32 | slot2 : (long) slot2 << 32 | slot1;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.graph.EdgeWeights;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  LAGGED CORRELATION.
+// ----------------------------------------------
+// Cross-correlation of time series features that
+// are redundant with a delay. With the standardised
+// columns z (unit length) the correlation at lag k
+//
+//     r(k) = sum_t z_x[t] z_y[t + k],  |k| <= maxLag
+//
+// is the Pearson correlation for k = 0; the value
+// of a pair is the r(k) with the largest |r(k)|
+// (ties go to the smaller |k|), the lag itself is
+// kept as well. All lags of a pair come from one
+// inverse FFT of conj(Z_x) Z_y, the forward
+// transforms of the zero padded columns are
+// computed once per column and reused for all
+// pairs: O(m log m) per pair with m >= n + maxLag
+// instead of O(n maxLag). The reduction stores the
+// lags as the edge weights "<name>.lag".
+//
+// @author fschmidt
+//
+public class LaggedCorrelation implements CorrelationAlgorithm.Correlation, SharedColumnsCorrelation {
+
+    private final int maxLag;
+
+    public LaggedCorrelation(int maxLag) {
+        if (maxLag < 0) {
+            throw new IllegalArgumentException("maxLag must not be negative, got " + maxLag);
+        }
+        this.maxLag = maxLag;
+    }
+
+    public int getMaxLag() {
+        return maxLag;
+    }
+
+    public double correlation(double[] x, double[] y) {
+        return matrix(new String[]{"x", "y"}, new double[][]{x, y}).get(0, 1);
+    }
+
+    /*
+        Lag k of the best correlation, y[t + k] follows x[t].
+     */
+    public int lag(double[] x, double[] y) {
+        return matrix(new String[]{"x", "y"}, new double[][]{x, y}).getLag(0, 1);
+    }
+
+    public Matrix matrix(String[] names, double[][] columns) {
+        return matrix(names, new SharedColumns(columns));
+    }
+
+    public Matrix matrix(String[] names, SharedColumns shared) {
+        double[][] z = shared.standardised();
+        int n = shared.numberOfSamples();
+        int lags = Math.min(maxLag, Math.max(0, n - 1));
+        int m = Integer.highestOneBit(Math.max(1, n + lags - 1)) << 1;
+
+        // spectra [column][real, imaginary][frequency], null for NaN (constant) columns
+        double[][][] spectra = new double[z.length][][];
+        IntStream.range(0, z.length).parallel().forEach(c -> {
+            if (n == 0 || Double.isNaN(z[c][0])) return;
+            double[][] spectrum = new double[2][m];
+            System.arraycopy(z[c], 0, spectrum[0], 0, n);
+            FastFourierTransformer.transformInPlace(spectrum, DftNormalization.STANDARD, TransformType.FORWARD);
+            spectra[c] = spectrum;
+        });
+
+        Matrix matrix = new Matrix(names);
+        IntStream.range(0, z.length).parallel().forEach(i -> {
+            double[][] product = new double[2][m];
+            for (int j = i + 1; j < z.length; j++) {
+                if (spectra[i] == null || spectra[j] == null) {
+                    matrix.set(i, j, Double.NaN);
+                    continue;
+                }
+                // conj(Z_i) Z_j, its inverse transform holds r(k) at k and r(-k) at m - k
+                double[] re = spectra[i][0];
+                double[] im = spectra[i][1];
+                double[] otherRe = spectra[j][0];
+                double[] otherIm = spectra[j][1];
+                for (int f = 0; f < m; f++) {
+                    product[0][f] = re[f] * otherRe[f] + im[f] * otherIm[f];
+                    product[1][f] = re[f] * otherIm[f] - im[f] * otherRe[f];
+                }
+                FastFourierTransformer.transformInPlace(product, DftNormalization.STANDARD, TransformType.INVERSE);
+                double best = product[0][0];
+                int bestLag = 0;
+                for (int k = 1; k <= lags; k++) {
+                    if (Math.abs(product[0][k]) > Math.abs(best)) {
+                        best = product[0][k];
+                        bestLag = k;
+                    }
+                    if (Math.abs(product[0][m - k]) > Math.abs(best)) {
+                        best = product[0][m - k];
+                        bestLag = -k;
+                    }
+                }
+                matrix.set(i, j, Math.max(-1.0, Math.min(1.0, best)));
+                matrix.setLag(i, j, bestLag);
+            }
+        });
+        return matrix;
+    }
+
+    public String toString() {
+        return "laggedPearson(" + maxLag + ")";
+    }
+
+    // ----------------------------------------------
+    //  LAGGED MATRIX.
+    // ----------------------------------------------
+    // Correlation matrix with the lag of every pair.
+    // The lag is antisymmetric: getLag(i, j) = k
+    // means that column j follows column i by k
+    // samples, getLag(j, i) is -k.
+    public static class Matrix extends CorrelationMatrix {
+
+        private final int[] lags;
+
+        private Matrix(String[] names) {
+            super(names);
+            lags = new int[getNumberOfPairs()];
+        }
+
+        private void setLag(int i, int j, int lag) {
+            lags[index(i, j)] = i < j ? lag : -lag;
+        }
+
+        public int getLag(int i, int j) {
+            if (i == j) {
+                return 0;
+            }
+            int lag = lags[index(i, j)];
+            return i < j ? lag : -lag;
+        }
+
+        /*
+            Lags as edge weights, NaN for unknown vertices and NaN correlations.
+         */
+        public EdgeWeights lags() {
+            return (vertex1, vertex2) -> {
+                int i = indexOf(vertex1);
+                int j = indexOf(vertex2);
+                return i < 0 || j < 0 || Double.isNaN(get(i, j)) ? Double.NaN : getLag(i, j);
+            };
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + ", lags: " + Arrays.stream(lags).filter(lag -> lag != 0).count() + " non-zero";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fschmidt.feature.selection.correlation;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  MUTUAL INFORMATION CORRELATION.
+// ----------------------------------------------
+// Normalised mutual information
+//
+//     I(X; Y) / sqrt(H(X) H(Y))  in [0, 1]
+//
+// as a nonlinear alternative to the rank and
+// linear correlations. Every column is discretised
+// exactly once into equal frequency bins (equal
+// values always share a bin) and stored as one
+// byte code per sample, together with its entropy.
+// A pair then only needs one sequential pass over
+// two byte arrays to fill its joint histogram.
+// Constant features have no entropy and give NaN.
+//
+// @author fschmidt
+//
+public class MutualInformationCorrelation implements CorrelationAlgorithm.Correlation, SharedColumnsCorrelation {
+
+    private final int bins;
+
+    /*
+        bins per feature, at most 256 so that codes fit into a byte.
+     */
+    public MutualInformationCorrelation(int bins) {
+        if (bins < 2 || bins > 256) {
+            throw new IllegalArgumentException("bins must be in [2, 256], got " + bins);
+        }
+        this.bins = bins;
+    }
+
+    public double correlation(double[] x, double[] y) {
+        Discretised dx = new Discretised(x, CorrelationMatrices.order(x), bins);
+        Discretised dy = new Discretised(y, CorrelationMatrices.order(y), bins);
+        return normalisedMutualInformation(dx, dy, new int[bins * bins]);
+    }
+
+    public CorrelationMatrix matrix(String[] names, double[][] columns) {
+        return matrix(names, new SharedColumns(columns));
+    }
+
+    public CorrelationMatrix matrix(String[] names, SharedColumns shared) {
+        double[][] columns = shared.columns();
+        int[][] orders = shared.orders();
+        Discretised[] discretised = new Discretised[columns.length];
+        IntStream.range(0, columns.length).parallel().forEach(c ->
+                discretised[c] = new Discretised(columns[c], orders[c], bins));
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        IntStream.range(0, columns.length).parallel().forEach(i -> {
+            int[] joint = new int[bins * bins];
+            for (int j = i + 1; j < columns.length; j++) {
+                matrix.set(i, j, normalisedMutualInformation(discretised[i], discretised[j], joint));
+            }
+        });
+        return matrix;
+    }
+
+    private double normalisedMutualInformation(Discretised x, Discretised y, int[] joint) {
+        int n = x.codes.length;
+        if (x.entropy == 0.0 || y.entropy == 0.0) {
+            return Double.NaN;
+        }
+        Arrays.fill(joint, 0);
+        byte[] cx = x.codes;
+        byte[] cy = y.codes;
+        for (int s = 0; s < n; s++) {
+            joint[(cx[s] & 0xFF) * bins + (cy[s] & 0xFF)]++;
+        }
+        double jointEntropy = entropy(joint, n);
+        double mutualInformation = x.entropy + y.entropy - jointEntropy;
+        return Math.max(0.0, Math.min(1.0, mutualInformation / Math.sqrt(x.entropy * y.entropy)));
+    }
+
+    // Shannon entropy (nats) of a histogram of n samples
+    private static double entropy(int[] counts, int n) {
+        double entropy = 0.0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / n;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy;
+    }
+
+    public String toString() {
+        return "mutualInformation(" + bins + ")";
+    }
+
+    // ----------------------------------------------
+    //  DISCRETISED COLUMN.
+    // ----------------------------------------------
+    // Equal frequency bin code per sample and the
+    // entropy of the bin histogram.
+    private static final class Discretised {
+        final byte[] codes;
+        final double entropy;
+
+        Discretised(double[] x, int[] order, int bins) {
+            int n = x.length;
+            codes = new byte[n];
+            int[] counts = new int[bins];
+            int start = 0;
+            while (start < n) {
+                int end = start + 1;
+                while (end < n && Double.compare(x[order[start]], x[order[end]]) == 0) {
+                    end++;
+                }
+                // a run of equal values goes to the bin of its first position
+                int bin = (int) ((long) start * bins / n);
+                for (int s = start; s < end; s++) {
+                    codes[order[s]] = (byte) bin;
+                }
+                counts[bin] += end - start;
+                start = end;
+            }
+            entropy = entropy(counts, n);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package fschmidt.feature.selection.correlation;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// ----------------------------------------------
+//  SAMPLED CORRELATION.
+// ----------------------------------------------
+// Approximate correlation matrix for very tall
+// datasets. The matrix of the wrapped correlation
+// is estimated on a stratified row sample (one
+// random row out of each of sampleSize equally
+// sized strata) and every estimate gets a Fisher-z
+// confidence interval. The graph only needs to
+// know on which side of the threshold |r| lies,
+// so just the pairs whose interval contains the
+// threshold are recomputed on all rows, the
+// reported values of the other pairs are
+// estimates. The confidence holds per pair: of m
+// estimated pairs about m (1 - confidence) may
+// still be decided wrongly, so for a bound over
+// the whole matrix pass 1 - alpha / m.
+//
+// @author fschmidt
+//
+public class SampledCorrelation implements CorrelationAlgorithm.ThresholdedCorrelation {
+
+    private final CorrelationAlgorithm.Correlation exact;
+    private final int sampleSize;
+    private final double threshold;
+    private final double confidence;
+    private final double quantile;
+    private final long seed;
+
+    public SampledCorrelation(CorrelationAlgorithm.Correlation exact, int sampleSize, double threshold) {
+        this(exact, sampleSize, threshold, 0.99, 42L);
+    }
+
+    public SampledCorrelation(CorrelationAlgorithm.Correlation exact, int sampleSize, double threshold,
+                              double confidence, long seed) {
+        if (sampleSize < 5) {
+            throw new IllegalArgumentException("sample size must be at least 5, got " + sampleSize);
+        }
+        if (confidence <= 0.0 || confidence >= 1.0) {
+            throw new IllegalArgumentException("confidence must be in (0, 1), got " + confidence);
+        }
+        this.exact = exact;
+        this.sampleSize = sampleSize;
+        this.threshold = threshold;
+        this.confidence = confidence;
+        this.quantile = new NormalDistribution().inverseCumulativeProbability(1.0 - (1.0 - confidence) / 2.0);
+        this.seed = seed;
+    }
+
+    /*
+        A single pair gains nothing from sampling, it is computed exactly.
+     */
+    public double correlation(double[] x, double[] y) {
+        return exact.correlation(x, y);
+    }
+
+    public double threshold() {
+        return threshold;
+    }
+
+    public Matrix matrix(String[] names, double[][] columns) {
+        int n = columns.length == 0 ? 0 : columns[0].length;
+        if (n <= sampleSize) {
+            return Matrix.exact(exact.matrix(names, columns));
+        }
+        int[] rows = stratifiedSample(n);
+        double[][] sample = new double[columns.length][rows.length];
+        for (int c = 0; c < columns.length; c++) {
+            for (int s = 0; s < rows.length; s++) {
+                sample[c][s] = columns[c][rows[s]];
+            }
+        }
+        CorrelationMatrix estimates = exact.matrix(names, sample);
+        double standardError = Math.sqrt(varianceFactor() / (rows.length - (exact == CorrelationAlgorithm.Kendalls ? 4 : 3)));
+
+        Matrix matrix = new Matrix(names);
+        List<int[]> straddling = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            for (int j = i + 1; j < names.length; j++) {
+                double r = estimates.get(i, j);
+                double z = fisherZ(r);
+                double lower = Math.tanh(z - quantile * standardError);
+                double upper = Math.tanh(z + quantile * standardError);
+                matrix.set(i, j, r);
+                matrix.setInterval(i, j, lower, upper);
+                if (Double.isNaN(r) || straddles(lower, upper)) {
+                    straddling.add(new int[]{i, j});
+                }
+            }
+        }
+        straddling.parallelStream().forEach(pair -> {
+            double r = exact.correlation(columns[pair[0]], columns[pair[1]]);
+            matrix.set(pair[0], pair[1], r);
+            matrix.setInterval(pair[0], pair[1], r, r);
+        });
+        matrix.numberOfRecomputedPairs = straddling.size();
+        System.out.println(String.format("Sampled %s of %s rows, recomputed %s of %s pairs exactly.",
+                rows.length, n, straddling.size(), matrix.getNumberOfPairs()));
+        return matrix;
+    }
+
+    // one random row out of each stratum [k * n / m, (k + 1) * n / m)
+    private int[] stratifiedSample(int n) {
+        Random random = new Random(seed);
+        int[] rows = new int[sampleSize];
+        for (int k = 0; k < sampleSize; k++) {
+            long from = (long) k * n / sampleSize;
+            long to = (long) (k + 1) * n / sampleSize;
+            rows[k] = (int) (from + random.nextInt((int) (to - from)));
+        }
+        return rows;
+    }
+
+    // does the interval of |r| contain the threshold?
+    private boolean straddles(double lower, double upper) {
+        double absLower = lower <= 0.0 && upper >= 0.0 ? 0.0 : Math.min(Math.abs(lower), Math.abs(upper));
+        double absUpper = Math.max(Math.abs(lower), Math.abs(upper));
+        return absLower <= threshold && threshold <= absUpper;
+    }
+
+    // variance of atanh(r) times (m - 3) (Fieller et al. for rank correlations)
+    private double varianceFactor() {
+        if (exact == CorrelationAlgorithm.Spearmans) {
+            return 1.06;
+        }
+        if (exact == CorrelationAlgorithm.Kendalls) {
+            return 0.437;
+        }
+        return 1.0;
+    }
+
+    private static double fisherZ(double r) {
+        double clamped = Math.max(-1.0 + 1e-12, Math.min(1.0 - 1e-12, r));
+        return 0.5 * Math.log((1.0 + clamped) / (1.0 - clamped));
+    }
+
+    public String toString() {
+        return "sampled(" + exact + ", " + sampleSize + ", " + threshold + ", " + confidence + ", " + seed + ")";
+    }
+
+    // ----------------------------------------------
+    //  SAMPLED MATRIX.
+    // ----------------------------------------------
+    // Correlation matrix with a confidence interval
+    // per pair, exact pairs have lower = upper.
+    public static class Matrix extends CorrelationMatrix {
+
+        private final CorrelationMatrix lower;
+        private final CorrelationMatrix upper;
+        private int numberOfRecomputedPairs;
+
+        private Matrix(String[] names) {
+            super(names);
+            lower = new CorrelationMatrix(names);
+            upper = new CorrelationMatrix(names);
+        }
+
+        private static Matrix exact(CorrelationMatrix exact) {
+            Matrix matrix = new Matrix(exact.getNames());
+            for (int i = 0; i < exact.size(); i++) {
+                for (int j = i + 1; j < exact.size(); j++) {
+                    matrix.set(i, j, exact.get(i, j));
+                    matrix.setInterval(i, j, exact.get(i, j), exact.get(i, j));
+                }
+            }
+            matrix.numberOfRecomputedPairs = matrix.getNumberOfPairs();
+            return matrix;
+        }
+
+        private void setInterval(int i, int j, double lowerValue, double upperValue) {
+            lower.set(i, j, lowerValue);
+            upper.set(i, j, upperValue);
+        }
+
+        public double getLower(int i, int j) {
+            return i == j ? 1.0 : lower.get(i, j);
+        }
+
+        public double getUpper(int i, int j) {
+            return i == j ? 1.0 : upper.get(i, j);
+        }
+
+        public boolean isExact(int i, int j) {
+            return i == j || Double.compare(lower.get(i, j), upper.get(i, j)) == 0;
+        }
+
+        public int getNumberOfRecomputedPairs() {
+            return numberOfRecomputedPairs;
+        }
+    }
+}
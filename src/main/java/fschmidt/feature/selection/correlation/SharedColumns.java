@@ -0,0 +1,113 @@
+package fschmidt.feature.selection.correlation;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  SHARED COLUMNS.
+// ----------------------------------------------
+// Per column intermediate results that several
+// correlation matrices need: standardised values
+// (Pearson), sort permutations (Spearman, Kendall,
+// mutual information), average ranks (Spearman),
+// dense ranks and tie counts (Kendall). Each one
+// is computed on first use, in parallel over the
+// columns, and then shared by all engines.
+//
+// @author fschmidt
+//
+final class SharedColumns {
+
+    private final double[][] columns;
+    private double[][] standardised;
+    private int[][] orders;
+    private double[][] averageRanks;
+    private int[][] denseRanks;
+    private long[] tiedPairs;
+
+    SharedColumns(double[][] columns) {
+        this.columns = columns;
+    }
+
+    double[][] columns() {
+        return columns;
+    }
+
+    int numberOfSamples() {
+        return columns.length == 0 ? 0 : columns[0].length;
+    }
+
+    synchronized double[][] standardised() {
+        if (standardised == null) {
+            standardised = CorrelationMatrices.standardise(columns);
+        }
+        return standardised;
+    }
+
+    synchronized int[][] orders() {
+        if (orders == null) {
+            int[][] result = new int[columns.length][];
+            IntStream.range(0, columns.length).parallel().forEach(c -> result[c] = CorrelationMatrices.order(columns[c]));
+            orders = result;
+        }
+        return orders;
+    }
+
+    /*
+        Average ranks per column, columns containing NaN are all NaN.
+     */
+    synchronized double[][] averageRanks() {
+        if (averageRanks == null) {
+            int[][] orders = orders();
+            double[][] result = new double[columns.length][];
+            IntStream.range(0, columns.length).parallel().forEach(c -> {
+                double[] x = columns[c];
+                if (Arrays.stream(x).anyMatch(Double::isNaN)) {
+                    result[c] = new double[x.length];
+                    Arrays.fill(result[c], Double.NaN);
+                } else {
+                    result[c] = CorrelationMatrices.averageRanks(x, orders[c]);
+                }
+            });
+            averageRanks = result;
+        }
+        return averageRanks;
+    }
+
+    synchronized int[][] denseRanks() {
+        if (denseRanks == null) {
+            int[][] orders = orders();
+            int[][] result = new int[columns.length][];
+            IntStream.range(0, columns.length).parallel().forEach(c ->
+                    result[c] = CorrelationMatrices.denseRanks(columns[c], orders[c]));
+            denseRanks = result;
+        }
+        return denseRanks;
+    }
+
+    /*
+        Number of tied pairs sum t * (t - 1) / 2 per column.
+     */
+    synchronized long[] tiedPairs() {
+        if (tiedPairs == null) {
+            int[][] orders = orders();
+            int[][] ranks = denseRanks();
+            long[] result = new long[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                long tied = 0;
+                long run = 1;
+                for (int s = 1; s < orders[c].length; s++) {
+                    if (ranks[c][orders[c][s]] == ranks[c][orders[c][s - 1]]) {
+                        run++;
+                    } else {
+                        tied += run * (run - 1) / 2;
+                        run = 1;
+                    }
+                }
+                result[c] = tied + run * (run - 1) / 2;
+            }
+            tiedPairs = result;
+        }
+        return tiedPairs;
+    }
+}
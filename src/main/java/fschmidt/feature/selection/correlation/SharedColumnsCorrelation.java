@@ -0,0 +1,20 @@
+package fschmidt.feature.selection.correlation;
+
+// ----------------------------------------------
+//  SHARED COLUMNS CORRELATION.
+// ----------------------------------------------
+// Hook for correlations whose matrix can reuse the
+// per column results of SharedColumns (orders,
+// ranks, standardised values). Batch engines such
+// as CorrelationMatrices.matrices call it instead
+// of matrix(names, columns), so correlations that
+// are computed together sort and standardise
+// every column only once. Internal to the package
+// like SharedColumns.
+//
+// @author fschmidt
+//
+interface SharedColumnsCorrelation {
+
+    CorrelationMatrix matrix(String[] names, SharedColumns shared);
+}
@@ -0,0 +1,239 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.Kernels;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  SIM HASH CORRELATION.
+// ----------------------------------------------
+// Pearson matrix for very wide data that only
+// computes the pairs which are likely to be above
+// the threshold. Every standardised column gets a
+// random hyperplane (SimHash) signature of
+// bands x rowsPerBand bits, bit b = sign(<z, g_b>)
+// with random +-1 directions g_b. Two columns
+// agree on a bit with probability 1 - acos(r) / pi,
+// so highly correlated columns share whole bands.
+// A band is keyed by min(bits, ~bits), hence a
+// column and the complement of its signature land
+// in the same bucket and strongly negative pairs
+// are found as well. Pairs sharing a bucket in at
+// least one band are candidates and computed
+// exactly; all other pairs are taken as
+// uncorrelated (0), i.e. they stay edges of the
+// graph. Costs O(d n bits) for the signatures
+// instead of O(d^2 n) for all pairs; a truly
+// correlated pair is missed with probability
+// (1 - (1 - acos(|r|) / pi)^rowsPerBand)^bands,
+// so by default the banding is derived from the
+// threshold for a recall of 0.99 at |r| = threshold.
+//
+// @author fschmidt
+//
+public class SimHashCorrelation implements CorrelationAlgorithm.ThresholdedCorrelation, SharedColumnsCorrelation {
+
+    private final double threshold;
+    private final int bands;
+    private final int rowsPerBand;
+    private final long seed;
+
+    /*
+        Bands and bits per band such that a pair with |r| = threshold becomes a candidate with probability >= 0.99.
+     */
+    public SimHashCorrelation(double threshold) {
+        this(threshold, 0.99, 42L);
+    }
+
+    /*
+        Derives the banding from the threshold: with p = 1 - acos(|threshold|) / pi the longest bands (fewest
+        uncorrelated candidates) are taken for which at most MAX_BANDS bands reach 1 - (1 - p^rows)^bands >= recall.
+        E.g. threshold 0.5: 116 bands of 8 bits, 0.7: 112 of 11, 0.9: 117 of 21.
+     */
+    public SimHashCorrelation(double threshold, double recall, long seed) {
+        this(threshold, bands(threshold, recall, rowsPerBand(threshold, recall)), rowsPerBand(threshold, recall), seed);
+    }
+
+    public SimHashCorrelation(double threshold, int bands, int rowsPerBand, long seed) {
+        if (bands < 1) {
+            throw new IllegalArgumentException("bands must be positive, got " + bands);
+        }
+        if (rowsPerBand < 1 || rowsPerBand > 63) {
+            throw new IllegalArgumentException("rowsPerBand must be in [1, 63], got " + rowsPerBand);
+        }
+        this.threshold = threshold;
+        this.bands = bands;
+        this.rowsPerBand = rowsPerBand;
+        this.seed = seed;
+    }
+
+    private static final int MAX_BANDS = 128;
+
+    private static int rowsPerBand(double threshold, double recall) {
+        if (!(recall > 0.0 && recall < 1.0)) {
+            throw new IllegalArgumentException("recall must be in (0, 1), got " + recall);
+        }
+        int rows = 1;
+        while (rows < 63 && bands(threshold, recall, rows + 1) <= MAX_BANDS) {
+            rows++;
+        }
+        return rows;
+    }
+
+    private static int bands(double threshold, double recall, int rowsPerBand) {
+        double hit = Math.pow(agreement(threshold), rowsPerBand);
+        if (hit >= 1.0) return 1;
+        double bands = Math.ceil(Math.log(1.0 - recall) / Math.log1p(-hit));
+        return (int) Math.max(1.0, Math.min(Integer.MAX_VALUE, bands));
+    }
+
+    private static double agreement(double r) {
+        return 1.0 - Math.acos(Math.min(1.0, Math.abs(r))) / Math.PI;
+    }
+
+    /*
+        Probability that a pair with correlation r shares a bucket in at least one band.
+     */
+    public double recall(double r) {
+        return 1.0 - Math.pow(1.0 - Math.pow(agreement(r), rowsPerBand), bands);
+    }
+
+    public double correlation(double[] x, double[] y) {
+        return new PearsonsCorrelation().correlation(x, y);
+    }
+
+    public double threshold() {
+        return threshold;
+    }
+
+    public Matrix matrix(String[] names, double[][] columns) {
+        return matrix(names, new SharedColumns(columns));
+    }
+
+    public Matrix matrix(String[] names, SharedColumns shared) {
+        double[][] z = shared.standardised();
+        int d = z.length;
+        int n = shared.numberOfSamples();
+        long[][] signatures = signatures(z, n);
+
+        // candidates: pairs sharing a bucket in any band, packed as i * d + j
+        LongOpenHashSet candidates = new LongOpenHashSet();
+        long mask = (1L << rowsPerBand) - 1;
+        for (int band = 0; band < bands; band++) {
+            Long2ObjectOpenHashMap<IntArrayList> buckets = new Long2ObjectOpenHashMap<>();
+            for (int c = 0; c < d; c++) {
+                if (signatures[c] == null) continue;
+                long bits = signatures[c][band];
+                long key = Math.min(bits, ~bits & mask);
+                IntArrayList bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new IntArrayList();
+                    buckets.put(key, bucket);
+                }
+                for (int k = 0; k < bucket.size(); k++) {
+                    candidates.add((long) bucket.getInt(k) * d + c);
+                }
+                bucket.add(c);
+            }
+        }
+
+        Matrix matrix = new Matrix(names);
+        for (int i = 0; i < d; i++) {
+            if (signatures[i] == null) {
+                for (int j = 0; j < d; j++) {
+                    if (j != i) matrix.set(i, j, Double.NaN);
+                }
+            }
+        }
+        long[] pairs = candidates.toLongArray();
+        IntStream.range(0, pairs.length).parallel().forEach(p -> {
+            int i = (int) (pairs[p] / d);
+            int j = (int) (pairs[p] % d);
+            matrix.set(i, j, Math.max(-1.0, Math.min(1.0, Kernels.dot(z[i], z[j]))));
+            matrix.markCandidate(i, j);
+        });
+        System.out.println(String.format("SimHash proposed %s of %s pairs as candidates.", pairs.length, matrix.getNumberOfPairs()));
+        return matrix;
+    }
+
+    /*
+        bands x rowsPerBand sign bits per column, one long per band; null for NaN (constant) columns. The +-1
+        directions are seeded random bits, one byte per bit and group of 8 samples. With the subset sums
+        of a group (256 table entries) every bit costs one lookup per 8 samples: <z, g> = 2 sum_{g = +1} z - sum z.
+     */
+    private long[][] signatures(double[][] z, int n) {
+        int bits = bands * rowsPerBand;
+        int groups = (n + 7) / 8;
+        byte[][] directions = new byte[groups][bits];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (byte[] group : directions) {
+            for (int b = 0; b < bits; b++) {
+                group[b] = (byte) random.nextInt(256);
+            }
+        }
+        long[][] signatures = new long[z.length][];
+        IntStream.range(0, z.length).parallel().forEach(c -> {
+            double[] x = z[c];
+            if (n == 0 || Double.isNaN(x[0])) return;
+            double[] subsetSums = new double[bits];
+            double[] table = new double[256];
+            double total = 0.0;
+            for (int g = 0; g < groups; g++) {
+                int base = 8 * g;
+                for (int m = 1; m < 256; m++) {
+                    int lowest = Integer.numberOfTrailingZeros(m);
+                    table[m] = table[m & (m - 1)] + (base + lowest < n ? x[base + lowest] : 0.0);
+                }
+                total += table[255];
+                byte[] group = directions[g];
+                for (int b = 0; b < bits; b++) {
+                    subsetSums[b] += table[group[b] & 0xFF];
+                }
+            }
+            long[] signature = new long[bands];
+            for (int b = 0; b < bits; b++) {
+                if (2.0 * subsetSums[b] - total > 0.0) {
+                    signature[b / rowsPerBand] |= 1L << (b % rowsPerBand);
+                }
+            }
+            signatures[c] = signature;
+        });
+        return signatures;
+    }
+
+    public String toString() {
+        return "simHashPearson(" + threshold + ", " + bands + ", " + rowsPerBand + ", " + seed + ")";
+    }
+
+    // ----------------------------------------------
+    //  SIM HASH MATRIX.
+    // ----------------------------------------------
+    // Correlation matrix that knows which pairs were
+    // candidates (exact), all others are 0 or NaN.
+    public static class Matrix extends CorrelationMatrix {
+
+        private final BitSet candidates = new BitSet();
+
+        private Matrix(String[] names) {
+            super(names);
+        }
+
+        private synchronized void markCandidate(int i, int j) {
+            candidates.set(index(i, j));
+        }
+
+        public synchronized boolean isCandidate(int i, int j) {
+            return i != j && candidates.get(index(i, j));
+        }
+
+        public synchronized int getNumberOfCandidates() {
+            return candidates.cardinality();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package fschmidt.feature.selection.correlation;
+
+import fschmidt.feature.selection.Kernels;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// ----------------------------------------------
+//  SKETCHED CORRELATION.
+// ----------------------------------------------
+// Pearson matrix for very tall data from count
+// sketches of the rows. Every standardised column
+// is compressed in one pass into k buckets: row s
+// adds sign(s) z[s] to bucket h(s), with h and the
+// sign given by a seeded hash of s, i.e. a sparse
+// random projection with a single +-1 per row. The
+// cosine of two sketches estimates r with a
+// standard error of about sqrt((1 + r^2) / k), so
+// k is chosen from the accuracy target:
+//
+//     k = ceil(2 q^2 / accuracy^2)
+//
+// with q the normal quantile of the confidence.
+// All pairs are then estimated with the gram
+// kernel on k instead of n rows. Pairs whose
+// estimate lies within accuracy of the threshold
+// (and NaN pairs) are recomputed exactly. The
+// confidence is per pair: of m estimated pairs
+// about m (1 - confidence) may end up on the
+// wrong side of the threshold. A bound for the
+// whole matrix needs a confidence of
+// 1 - alpha / m, which only grows k with log m.
+//
+// @author fschmidt
+//
+public class SketchedCorrelation implements CorrelationAlgorithm.ThresholdedCorrelation, SharedColumnsCorrelation {
+
+    private final double threshold;
+    private final double accuracy;
+    private final double confidence;
+    private final int sketchSize;
+    private final long seed;
+
+    /*
+        Estimates within +-0.05 with confidence 0.99.
+     */
+    public SketchedCorrelation(double threshold) {
+        this(threshold, 0.05, 0.99, 42L);
+    }
+
+    public SketchedCorrelation(double threshold, double accuracy, double confidence, long seed) {
+        if (accuracy <= 0.0 || accuracy >= 1.0) {
+            throw new IllegalArgumentException("accuracy must be in (0, 1), got " + accuracy);
+        }
+        if (confidence <= 0.0 || confidence >= 1.0) {
+            throw new IllegalArgumentException("confidence must be in (0, 1), got " + confidence);
+        }
+        double quantile = new NormalDistribution().inverseCumulativeProbability(1.0 - (1.0 - confidence) / 2.0);
+        this.threshold = threshold;
+        this.accuracy = accuracy;
+        this.confidence = confidence;
+        this.sketchSize = (int) Math.ceil(2.0 * quantile * quantile / (accuracy * accuracy));
+        this.seed = seed;
+    }
+
+    public double correlation(double[] x, double[] y) {
+        return new PearsonsCorrelation().correlation(x, y);
+    }
+
+    public double threshold() {
+        return threshold;
+    }
+
+    public int getSketchSize() {
+        return sketchSize;
+    }
+
+    public Matrix matrix(String[] names, double[][] columns) {
+        return matrix(names, new SharedColumns(columns));
+    }
+
+    public Matrix matrix(String[] names, SharedColumns shared) {
+        double[][] z = shared.standardised();
+        int n = shared.numberOfSamples();
+        Matrix matrix = new Matrix(names);
+        if (n <= sketchSize) {
+            // nothing to compress
+            CorrelationMatrix exact = CorrelationMatrices.gram(names, z);
+            for (int i = 0; i < names.length; i++) {
+                for (int j = i + 1; j < names.length; j++) {
+                    matrix.set(i, j, exact.get(i, j));
+                }
+            }
+            matrix.numberOfRecomputedPairs = matrix.getNumberOfPairs();
+            return matrix;
+        }
+
+        // unit length sketches, so that the gram kernel yields their cosines
+        double[][] sketches = new double[z.length][];
+        IntStream.range(0, z.length).parallel().forEach(c -> {
+            double[] sketch = new double[sketchSize];
+            double[] x = z[c];
+            for (int s = 0; s < n; s++) {
+                long hash = mix(seed + s);
+                int bucket = (int) ((hash >>> 1) % sketchSize);
+                sketch[bucket] += (hash & 1L) == 0 ? x[s] : -x[s];
+            }
+            double norm = Math.sqrt(Kernels.dot(sketch, sketch));
+            for (int b = 0; b < sketchSize; b++) {
+                sketch[b] = norm > 0.0 ? sketch[b] / norm : Double.NaN;
+            }
+            sketches[c] = sketch;
+        });
+        CorrelationMatrix estimates = CorrelationMatrices.gram(names, sketches);
+
+        List<int[]> nearThreshold = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            for (int j = i + 1; j < names.length; j++) {
+                double r = estimates.get(i, j);
+                matrix.set(i, j, r);
+                if (Double.isNaN(r) || Math.abs(Math.abs(r) - threshold) <= accuracy) {
+                    nearThreshold.add(new int[]{i, j});
+                }
+            }
+        }
+        nearThreshold.parallelStream().forEach(pair -> {
+            int i = pair[0];
+            int j = pair[1];
+            matrix.set(i, j, Double.isNaN(z[i][0]) || Double.isNaN(z[j][0])
+                    ? Double.NaN : Math.max(-1.0, Math.min(1.0, Kernels.dot(z[i], z[j]))));
+            matrix.markExact(i, j);
+        });
+        matrix.numberOfRecomputedPairs = nearThreshold.size();
+        System.out.println(String.format("Sketched %s rows into %s, recomputed %s of %s pairs exactly.",
+                n, sketchSize, nearThreshold.size(), matrix.getNumberOfPairs()));
+        return matrix;
+    }
+
+    // finaliser of MurmurHash3, a well mixed 64 bit hash of the row index
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public String toString() {
+        return "sketchedPearson(" + threshold + ", " + accuracy + ", " + confidence + ", " + seed + ")";
+    }
+
+    // ----------------------------------------------
+    //  SKETCHED MATRIX.
+    // ----------------------------------------------
+    // Correlation matrix that knows which pairs are
+    // exact, the others are sketch estimates.
+    public static class Matrix extends CorrelationMatrix {
+
+        private final BitSet exact = new BitSet();
+        private int numberOfRecomputedPairs;
+
+        private Matrix(String[] names) {
+            super(names);
+        }
+
+        private synchronized void markExact(int i, int j) {
+            exact.set(index(i, j));
+        }
+
+        public synchronized boolean isExact(int i, int j) {
+            return i == j || numberOfRecomputedPairs == getNumberOfPairs() || exact.get(index(i, j));
+        }
+
+        public int getNumberOfRecomputedPairs() {
+            return numberOfRecomputedPairs;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package fschmidt.feature.selection.graph;
+
+import org.jgrapht.alg.clique.BronKerboschCliqueFinder;
+import org.jgrapht.alg.clique.DegeneracyBronKerboschCliqueFinder;
+import org.jgrapht.alg.clique.PivotBronKerboschCliqueFinder;
+import org.jgrapht.alg.interfaces.MaximalCliqueEnumerationAlgorithm;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+// ----------------------------------------------
+//  CLIQUE ENGINES.
+// ----------------------------------------------
+// Interchangeable clique enumerators for the graph
+// based feature selection. BRON_KERBOSCH_PIVOTING
+// is our own CliqueAlgorithm (reports every clique
+// it visits), the JGRAPHT_* engines run the JGraphT
+// maximal clique enumerators on a JGraphTAdapter.
+// All engines report the same maximum cliques,
+// which is all the selector looks at.
+//
+// @author fschmidt
+//
+public enum CliqueEngines {
+
+    BRON_KERBOSCH_PIVOTING {
+        public Set<Set<WeightedVertex>> cliques(UndirectedGraph graph) {
+            return CliqueAlgorithm.bronKerboschPivoting(graph);
+        }
+    },
+
+    JGRAPHT_BRON_KERBOSCH {
+        public Set<Set<WeightedVertex>> cliques(UndirectedGraph graph) {
+            return collect(graph, BronKerboschCliqueFinder::new);
+        }
+    },
+
+    JGRAPHT_PIVOT {
+        public Set<Set<WeightedVertex>> cliques(UndirectedGraph graph) {
+            return collect(graph, PivotBronKerboschCliqueFinder::new);
+        }
+    },
+
+    JGRAPHT_DEGENERACY {
+        public Set<Set<WeightedVertex>> cliques(UndirectedGraph graph) {
+            return collect(graph, DegeneracyBronKerboschCliqueFinder::new);
+        }
+    };
+
+    public abstract Set<Set<WeightedVertex>> cliques(UndirectedGraph graph);
+
+    private static Set<Set<WeightedVertex>> collect(UndirectedGraph graph,
+            Function<JGraphTAdapter, MaximalCliqueEnumerationAlgorithm<WeightedVertex, WeightedEdge>> finder) {
+        Set<Set<WeightedVertex>> allCliques = new HashSet<>();
+        for (Set<WeightedVertex> clique : finder.apply(new JGraphTAdapter(graph))) {
+            allCliques.add(clique);
+        }
+        return allCliques;
+    }
+}
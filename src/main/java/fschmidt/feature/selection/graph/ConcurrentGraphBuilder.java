@@ -0,0 +1,170 @@
+package fschmidt.feature.selection.graph;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ----------------------------------------------
+//  CONCURRENT GRAPH BUILDER.
+// ----------------------------------------------
+// Collects vertices and edges from many threads
+// and seals them into an UndirectedGraph (or a
+// frozen MappedGraph) afterwards. Vertices live in
+// a ConcurrentHashMap, edges in lock striped hash
+// maps keyed by the unordered pair of vertex
+// names, so threads only contend if they insert
+// into the same stripe. Edges handed out by addEdge
+// are not wired into the vertices until build(),
+// their properties can be set by the inserting
+// thread without further synchronisation.
+//
+// @author fschmidt
+//
+public class ConcurrentGraphBuilder {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ConcurrentHashMap<String, WeightedVertex> vertices = new ConcurrentHashMap<>();
+    private final Stripe[] stripes;
+    private volatile boolean sealed;
+
+    public ConcurrentGraphBuilder() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public ConcurrentGraphBuilder(int concurrencyLevel) {
+        int n = Integer.highestOneBit(Math.max(1, concurrencyLevel - 1) << 1);
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /*
+        Returns the vertex known to the builder under the name of the given vertex.
+     */
+    public WeightedVertex addVertex(WeightedVertex vertex) {
+        checkNotSealed();
+        WeightedVertex known = vertices.putIfAbsent(vertex.getName(), vertex);
+        return known == null ? vertex : known;
+    }
+
+    public WeightedVertex getVertex(String name) {
+        return vertices.get(name);
+    }
+
+    public boolean containsVertex(String name) {
+        return vertices.containsKey(name);
+    }
+
+    /*
+        Same contract as UndirectedGraph.addEdge: null if the (undirected) edge already exists.
+     */
+    public WeightedEdge addEdge(WeightedVertex vertex1, WeightedVertex vertex2) {
+        checkNotSealed();
+        EdgeKey key = new EdgeKey(vertex1.getName(), vertex2.getName());
+        Stripe stripe = stripes[key.hashCode() & (stripes.length - 1)];
+        synchronized (stripe) {
+            if (stripe.edges.containsKey(key)) {
+                return null;
+            }
+            WeightedEdge edge = new WeightedEdge(vertex1, vertex2);
+            stripe.edges.put(key, edge);
+            return edge;
+        }
+    }
+
+    public WeightedEdge addEdge(String vertex1, String vertex2, String key, Object data) {
+        WeightedEdge edge = addEdge(vertices.get(vertex1), vertices.get(vertex2));
+        if (edge != null) {
+            edge.addProperty(key, data);
+        }
+        return edge;
+    }
+
+    public int getNumberOfVertices() {
+        return vertices.size();
+    }
+
+    public int getNumberOfEdges() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.edges.size();
+            }
+        }
+        return size;
+    }
+
+    /*
+        Seals the builder into a regular graph. Must not run concurrently with insertions.
+     */
+    public UndirectedGraph build() {
+        sealed = true;
+        UndirectedGraph graph = new UndirectedGraph();
+        for (WeightedVertex v : vertices.values()) {
+            graph.addVertex(v);
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (WeightedEdge e : stripe.edges.values()) {
+                    graph.attachEdge(e);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /*
+        Seals the builder into an immutable, memory mapped graph stored at path.
+     */
+    public MappedGraph freeze(Path path) throws IOException {
+        GraphFile.write(build(), path);
+        return GraphFile.open(path);
+    }
+
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new IllegalStateException("ConcurrentGraphBuilder is already sealed");
+        }
+    }
+
+    // ----------------------------------------------
+    //  STRIPE.
+    // ----------------------------------------------
+    private static final class Stripe {
+        final Map<EdgeKey, WeightedEdge> edges = new HashMap<>();
+    }
+
+    // ----------------------------------------------
+    //  EDGE KEY.
+    // ----------------------------------------------
+    // Unordered pair of vertex names.
+    private static final class EdgeKey {
+        final String name1;
+        final String name2;
+
+        EdgeKey(String a, String b) {
+            boolean ordered = a.compareTo(b) <= 0;
+            name1 = ordered ? a : b;
+            name2 = ordered ? b : a;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof EdgeKey)) return false;
+            EdgeKey that = (EdgeKey) o;
+            return name1.equals(that.name1) && name2.equals(that.name2);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Objects.hash(name1, name2);
+            return h ^ (h >>> 16);
+        }
+    }
+}
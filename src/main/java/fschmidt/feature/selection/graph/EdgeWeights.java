@@ -0,0 +1,29 @@
+package fschmidt.feature.selection.graph;
+
+// ----------------------------------------------
+//  EDGE WEIGHTS.
+// ----------------------------------------------
+// A numeric edge property kept outside of the
+// edges, e.g. a packed correlation matrix. An
+// UndirectedGraph can register such a column
+// under a key; the graph then reads the weight
+// of an edge from the column instead of from the
+// property map of the edge, so no value is boxed
+// per edge.
+//
+// @author fschmidt
+//
+public interface EdgeWeights {
+
+    /*
+        Weight of the edge between the two vertices, NaN if unknown.
+     */
+    double getWeight(String vertex1, String vertex2);
+
+    /*
+        Whether the values carry no more than float32 precision (GraphFile then stores them as float32).
+     */
+    default boolean isSinglePrecision() {
+        return false;
+    }
+}
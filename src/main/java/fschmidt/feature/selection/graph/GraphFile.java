@@ -0,0 +1,353 @@
+package fschmidt.feature.selection.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static java.nio.file.StandardOpenOption.*;
+
+// ----------------------------------------------
+//  GRAPH FILE.
+// ----------------------------------------------
+// Compact binary representation of an
+// UndirectedGraph. The file is written once with
+// NIO (and atomically replaced, never truncated)
+// and opened through MappedGraph without
+// deserialising any vertex or edge objects, so a
+// correlation graph can be shared by many
+// selection jobs on the same machine.
+//
+//  LAYOUT (little endian, sections 8 byte aligned):
+//
+//  +---------------------------------------------+
+//  | magic | version | V | E | #vcols | #ecols   |
+//  | section table: (offset, length) * sections  |
+//  +---------------------------------------------+
+//  | NAME_OFFSETS    int[V + 1]                  |
+//  | NAME_BYTES      utf-8, vertices sorted      |
+//  | ROW_OFFSETS     int[V + 1]  (CSR)           |
+//  | ADJACENCY       int[2E] sorted per row      |
+//  | ADJACENCY_EDGES int[2E] edge id per slot    |
+//  | ENDPOINTS       int[2E] (v1 < v2) per edge  |
+//  | COLUMN_INFO     (type, name) per column     |
+//  | vertex columns  V values each               |
+//  | edge columns    E values each               |
+//  +---------------------------------------------+
+//
+// Only numeric properties are stored. Columns are
+// typed (float64, float32, int64), missing values
+// become NaN respectively Long.MIN_VALUE (so a NaN
+// property reads back as missing). EdgeWeights
+// columns of the graph are stored like properties.
+//
+// @author fschmidt
+//
+public enum GraphFile {
+    ;
+
+    static final int MAGIC = 0x47424653; // "GBFS"
+    static final int VERSION = 1;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int HEADER_INTS = 6;
+
+    static final int NAME_OFFSETS = 0;
+    static final int NAME_BYTES = 1;
+    static final int ROW_OFFSETS = 2;
+    static final int ADJACENCY = 3;
+    static final int ADJACENCY_EDGES = 4;
+    static final int ENDPOINTS = 5;
+    static final int COLUMN_INFO = 6;
+    static final int FIXED_SECTIONS = 7;
+
+    static final byte FLOAT64 = 1;
+    static final byte FLOAT32 = 2;
+    static final byte INT64 = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /*
+        Writes into a temporary file next to the target and moves it into place, so processes that have the
+        old file mapped keep reading it and never see a truncated or half written one.
+     */
+    public static void write(UndirectedGraph graph, Path path) throws IOException {
+        // vertex dictionary, sorted by name to allow binary search on the mapped names
+        WeightedVertex[] vertices = graph.getVerticesMap().values().toArray(new WeightedVertex[0]);
+        Arrays.sort(vertices, Comparator.comparing(WeightedVertex::getName));
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < vertices.length; i++) {
+            index.put(vertices[i].getName(), i);
+        }
+
+        // edge list with ordered endpoints
+        WeightedEdge[] edges = graph.getEdges().toArray(new WeightedEdge[0]);
+        int[] endpoints = new int[edges.length * 2];
+        int[] degrees = new int[vertices.length];
+        for (int e = 0; e < edges.length; e++) {
+            int v1 = index.get(edges[e].getVertex1().getName());
+            int v2 = index.get(edges[e].getVertex2().getName());
+            endpoints[2 * e] = Math.min(v1, v2);
+            endpoints[2 * e + 1] = Math.max(v1, v2);
+            degrees[v1]++;
+            degrees[v2]++;
+        }
+
+        // CSR adjacency, neighbours sorted per row
+        int[] rowOffsets = new int[vertices.length + 1];
+        for (int v = 0; v < vertices.length; v++) {
+            rowOffsets[v + 1] = rowOffsets[v] + degrees[v];
+        }
+        long[] slots = new long[edges.length * 2];
+        int[] fill = Arrays.copyOf(rowOffsets, vertices.length);
+        for (int e = 0; e < edges.length; e++) {
+            int v1 = endpoints[2 * e];
+            int v2 = endpoints[2 * e + 1];
+            slots[fill[v1]++] = ((long) v2 << 32) | e;
+            slots[fill[v2]++] = ((long) v1 << 32) | e;
+        }
+        int[] adjacency = new int[slots.length];
+        int[] adjacencyEdges = new int[slots.length];
+        for (int v = 0; v < vertices.length; v++) {
+            Arrays.sort(slots, rowOffsets[v], rowOffsets[v + 1]);
+        }
+        for (int s = 0; s < slots.length; s++) {
+            adjacency[s] = (int) (slots[s] >>> 32);
+            adjacencyEdges[s] = (int) slots[s];
+        }
+
+        // names
+        byte[][] names = new byte[vertices.length][];
+        int[] nameOffsets = new int[vertices.length + 1];
+        for (int v = 0; v < vertices.length; v++) {
+            names[v] = vertices[v].getName().getBytes(StandardCharsets.UTF_8);
+            nameOffsets[v + 1] = nameOffsets[v] + names[v].length;
+        }
+
+        // typed property columns
+        Map<String, Byte> vertexColumns = columnTypes(vertices);
+        Map<String, Byte> edgeColumns = columnTypes(edges);
+        for (Map.Entry<String, EdgeWeights> column : graph.getEdgeWeights().entrySet()) {
+            edgeColumns.put(column.getKey(), column.getValue().isSinglePrecision() ? FLOAT32 : FLOAT64);
+        }
+
+        int sections = FIXED_SECTIONS + vertexColumns.size() + edgeColumns.size();
+        long[] table = new long[sections * 2];
+
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), "partial-", ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, WRITE)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(vertices.length);
+            out.putInt(edges.length);
+            out.putInt(vertexColumns.size());
+            out.putInt(edgeColumns.size());
+            for (int i = 0; i < table.length; i++) {
+                out.putLong(0L); // patched below
+            }
+
+            out.begin(table, NAME_OFFSETS);
+            out.putInts(nameOffsets);
+            out.begin(table, NAME_BYTES);
+            for (byte[] name : names) {
+                out.putBytes(name);
+            }
+            out.begin(table, ROW_OFFSETS);
+            out.putInts(rowOffsets);
+            out.begin(table, ADJACENCY);
+            out.putInts(adjacency);
+            out.begin(table, ADJACENCY_EDGES);
+            out.putInts(adjacencyEdges);
+            out.begin(table, ENDPOINTS);
+            out.putInts(endpoints);
+            out.begin(table, COLUMN_INFO);
+            for (Map<String, Byte> columns : List.of(vertexColumns, edgeColumns)) {
+                for (Map.Entry<String, Byte> column : columns.entrySet()) {
+                    byte[] name = column.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.putByte(column.getValue());
+                    out.putInt(name.length);
+                    out.putBytes(name);
+                }
+            }
+
+            int section = FIXED_SECTIONS;
+            for (Map.Entry<String, Byte> column : vertexColumns.entrySet()) {
+                out.begin(table, section++);
+                out.putColumn(vertices, column.getKey(), column.getValue());
+            }
+            for (Map.Entry<String, Byte> column : edgeColumns.entrySet()) {
+                out.begin(table, section++);
+                if (graph.getEdgeWeights().containsKey(column.getKey())) {
+                    out.putWeights(graph, edges, column.getKey(), column.getValue());
+                } else {
+                    out.putColumn(edges, column.getKey(), column.getValue());
+                }
+            }
+            out.end(table, section - 1);
+            out.flush();
+
+            // patch section table
+            ByteBuffer buffer = ByteBuffer.allocate(table.length * Long.BYTES).order(ORDER);
+            for (long entry : table) {
+                buffer.putLong(entry);
+            }
+            buffer.flip();
+            long position = HEADER_INTS * Integer.BYTES;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static MappedGraph open(Path path) throws IOException {
+        return new MappedGraph(path);
+    }
+
+    /*
+        Columns are typed by the widest numeric type found; non numeric properties are skipped.
+     */
+    private static Map<String, Byte> columnTypes(WeightedGraphElement[] elements) {
+        Map<String, Byte> types = new TreeMap<>();
+        for (WeightedGraphElement element : elements) {
+            for (Map.Entry<String, Object> property : element.getProperties().entrySet()) {
+                Object value = property.getValue();
+                if (!(value instanceof Number)) continue;
+                byte type = (value instanceof Float) ? FLOAT32
+                        : (value instanceof Double) ? FLOAT64
+                        : (value instanceof Long || value instanceof Integer
+                        || value instanceof Short || value instanceof Byte) ? INT64 : FLOAT64;
+                Byte known = types.get(property.getKey());
+                if (known == null || known == type) {
+                    types.put(property.getKey(), type);
+                } else {
+                    types.put(property.getKey(), FLOAT64);
+                }
+            }
+        }
+        return types;
+    }
+
+    static int width(byte type) {
+        return type == FLOAT32 ? Float.BYTES : Long.BYTES;
+    }
+
+    // ----------------------------------------------
+    //  OUTPUT.
+    // ----------------------------------------------
+    // Buffered sequential writer which keeps track of
+    // section offsets and alignment.
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ORDER);
+        private long position;
+        private int current = -1;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void begin(long[] table, int section) throws IOException {
+            if (current >= 0) end(table, current);
+            while (position % Long.BYTES != 0) putByte((byte) 0);
+            table[2 * section] = position;
+            current = section;
+        }
+
+        void end(long[] table, int section) {
+            table[2 * section + 1] = position - table[2 * section];
+            current = -1;
+        }
+
+        void putColumn(WeightedGraphElement[] elements, String key, byte type) throws IOException {
+            for (WeightedGraphElement element : elements) {
+                Object value = element.getProperty(key);
+                Number number = (value instanceof Number) ? (Number) value : null;
+                switch (type) {
+                    case FLOAT32:
+                        putFloat(number == null ? Float.NaN : number.floatValue());
+                        break;
+                    case INT64:
+                        putLong(number == null ? Long.MIN_VALUE : number.longValue());
+                        break;
+                    default:
+                        putDouble(number == null ? Double.NaN : number.doubleValue());
+                }
+            }
+        }
+
+        void putWeights(UndirectedGraph graph, WeightedEdge[] edges, String key, byte type) throws IOException {
+            for (WeightedEdge edge : edges) {
+                double weight = graph.getWeight(edge, key);
+                if (type == FLOAT32) {
+                    putFloat((float) weight);
+                } else {
+                    putDouble(weight);
+                }
+            }
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put(value);
+            position += Byte.BYTES;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(Float.BYTES);
+            buffer.putFloat(value);
+            position += Float.BYTES;
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+            position += Double.BYTES;
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        void putBytes(byte[] values) throws IOException {
+            for (byte value : values) {
+                putByte(value);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+    }
+}
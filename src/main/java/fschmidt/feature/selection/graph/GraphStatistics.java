@@ -0,0 +1,356 @@
+package fschmidt.feature.selection.graph;
+
+import java.util.*;
+
+// ----------------------------------------------
+//  GRAPH STATISTICS.
+// ----------------------------------------------
+// Aggregate information about an UndirectedGraph
+// that is maintained while vertices, edges and
+// edge properties change, so that queries never
+// rescan the graph.
+//
+//  - vertex / edge count, density          O(1)
+//  - degree histogram, max degree          O(1)
+//  - degeneracy upper bound                O(1)
+//  - sum / abs sum / mean per edge property O(1)
+//    (and per registered EdgeWeights column)
+//  - component count                       O(1)
+//    while only inserting, O(V + E) for the
+//    first query after a removal
+//
+// The degeneracy bound is the largest k such that
+// at least k + 1 vertices have degree >= k (the
+// h-index of the degree sequence). It bounds the
+// degeneracy from above, and thereby the clique
+// number by k + 1. Components are kept in a
+// union-find which only supports insertions; a
+// removal marks it stale and the next component
+// query rebuilds it once in O(V + E), so under
+// mixed insertions and removals the count is only
+// O(1) amortised over the removals between two
+// queries. Edge properties are tracked
+// through addProperty only: a value put directly
+// into getProperties() bypasses the hook and
+// leaves the property statistics stale.
+//
+// @author fschmidt
+//
+public class GraphStatistics {
+
+    private final UndirectedGraph graph;
+
+    private int numberOfVertices;
+    private int numberOfEdges;
+
+    private int[] degreeHistogram = new int[8];
+    private int maxDegree;
+    private int degeneracyBound;
+    private int atLeastDegeneracyBound;
+
+    private final Map<String, PropertyStatistics> edgeProperties = new HashMap<>();
+
+    private final Map<String, Integer> componentIds = new HashMap<>();
+    private int[] componentParents = new int[8];
+    private int nextComponentId;
+    private int numberOfComponents;
+    private boolean componentsStale;
+
+    GraphStatistics(UndirectedGraph graph) {
+        this.graph = graph;
+    }
+
+    // --------> QUERIES
+
+    public int getNumberOfVertices() {
+        return numberOfVertices;
+    }
+
+    public int getNumberOfEdges() {
+        return numberOfEdges;
+    }
+
+    public double getDensity() {
+        if (numberOfVertices < 2) {
+            return 0.0;
+        }
+        return 2.0 * numberOfEdges / ((double) numberOfVertices * (numberOfVertices - 1));
+    }
+
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    public double getAverageDegree() {
+        return numberOfVertices == 0 ? 0.0 : 2.0 * numberOfEdges / numberOfVertices;
+    }
+
+    public int getNumberOfVerticesWithDegree(int degree) {
+        return degree < degreeHistogram.length ? degreeHistogram[degree] : 0;
+    }
+
+    public int[] getDegreeHistogram() {
+        return Arrays.copyOf(degreeHistogram, maxDegree + 1);
+    }
+
+    public int getDegeneracyUpperBound() {
+        return degeneracyBound;
+    }
+
+    public int getCliqueNumberUpperBound() {
+        return numberOfVertices == 0 ? 0 : degeneracyBound + 1;
+    }
+
+    public int getNumberOfComponents() {
+        if (componentsStale) {
+            rebuildComponents();
+        }
+        return numberOfComponents;
+    }
+
+    public Set<String> getEdgeProperties() {
+        return Collections.unmodifiableSet(edgeProperties.keySet());
+    }
+
+    public long getCount(String key) {
+        PropertyStatistics p = edgeProperties.get(key);
+        return p == null ? 0 : p.count;
+    }
+
+    public double getSum(String key) {
+        PropertyStatistics p = edgeProperties.get(key);
+        return p == null ? 0.0 : p.sum;
+    }
+
+    public double getAbsSum(String key) {
+        PropertyStatistics p = edgeProperties.get(key);
+        return p == null ? 0.0 : p.absSum;
+    }
+
+    public double getMean(String key) {
+        PropertyStatistics p = edgeProperties.get(key);
+        return p == null || p.count == 0 ? Double.NaN : p.sum / p.count;
+    }
+
+    public double getAbsMean(String key) {
+        PropertyStatistics p = edgeProperties.get(key);
+        return p == null || p.count == 0 ? Double.NaN : p.absSum / p.count;
+    }
+
+    public long getNaNCount(String key) {
+        PropertyStatistics p = edgeProperties.get(key);
+        return p == null ? 0 : p.nanCount;
+    }
+
+    // --------> UPDATES (called by UndirectedGraph and WeightedEdge)
+
+    void vertexAdded(WeightedVertex vertex) {
+        numberOfVertices++;
+        degreeHistogram[0]++;
+        if (degeneracyBound == 0) atLeastDegeneracyBound++;
+        fixDegeneracyBound();
+        if (!componentsStale) {
+            componentIds.put(vertex.getName(), newComponent());
+        }
+    }
+
+    void vertexRemoved(WeightedVertex vertex) {
+        numberOfVertices--;
+        degreeHistogram[0]--;
+        if (degeneracyBound == 0) atLeastDegeneracyBound--;
+        fixDegeneracyBound();
+        Integer id = componentIds.remove(vertex.getName());
+        if (!componentsStale && id != null) {
+            numberOfComponents--; // isolated, hence a singleton set
+        }
+    }
+
+    void edgeAdded(WeightedEdge edge) {
+        numberOfEdges++;
+        WeightedVertex v1 = edge.getVertex1();
+        WeightedVertex v2 = edge.getVertex2();
+        int d1 = v1.getEdges().size();
+        degreeChanged(d1 - 1, d1);
+        if (!v1.equals(v2)) {
+            int d2 = v2.getEdges().size();
+            degreeChanged(d2 - 1, d2);
+        }
+        for (Map.Entry<String, Object> property : edge.getProperties().entrySet()) {
+            edgePropertyChanged(property.getKey(), null, property.getValue());
+        }
+        for (String key : graph.getEdgeWeights().keySet()) {
+            edgeProperties.computeIfAbsent(key, k -> new PropertyStatistics()).add(graph.getWeight(edge, key));
+        }
+        if (!componentsStale) {
+            Integer id1 = componentIds.get(v1.getName());
+            Integer id2 = componentIds.get(v2.getName());
+            if (id1 == null || id2 == null) {
+                componentsStale = true;
+            } else {
+                union(id1, id2);
+            }
+        }
+    }
+
+    void edgeRemoved(WeightedEdge edge) {
+        numberOfEdges--;
+        WeightedVertex v1 = edge.getVertex1();
+        WeightedVertex v2 = edge.getVertex2();
+        int d1 = v1.getEdges().size();
+        degreeChanged(d1 + 1, d1);
+        if (!v1.equals(v2)) {
+            int d2 = v2.getEdges().size();
+            degreeChanged(d2 + 1, d2);
+        }
+        for (Map.Entry<String, Object> property : edge.getProperties().entrySet()) {
+            edgePropertyChanged(property.getKey(), property.getValue(), null);
+        }
+        for (String key : graph.getEdgeWeights().keySet()) {
+            edgeProperties.get(key).remove(graph.getWeight(edge, key));
+        }
+        componentsStale = true;
+    }
+
+    void edgePropertyChanged(String key, Object oldValue, Object newValue) {
+        if (graph.getEdgeWeights().containsKey(key)) {
+            return; // shadowed by the weight column
+        }
+        if (oldValue instanceof Number && edgeProperties.containsKey(key)) {
+            edgeProperties.get(key).remove(((Number) oldValue).doubleValue());
+        }
+        if (newValue instanceof Number) {
+            edgeProperties.computeIfAbsent(key, k -> new PropertyStatistics()).add(((Number) newValue).doubleValue());
+        }
+    }
+
+    /*
+        A weight column was (un)registered, its statistics are recomputed once in O(E).
+     */
+    void edgeWeightsChanged(String key) {
+        edgeProperties.remove(key);
+        boolean column = graph.getEdgeWeights().containsKey(key);
+        for (WeightedEdge e : graph.getEdges()) {
+            if (column || e.getProperty(key) instanceof Number) {
+                edgeProperties.computeIfAbsent(key, k -> new PropertyStatistics()).add(graph.getWeight(e, key));
+            }
+        }
+    }
+
+    // --------> DEGREES
+
+    private void degreeChanged(int oldDegree, int newDegree) {
+        if (oldDegree == newDegree) return;
+        if (newDegree + 1 >= degreeHistogram.length) {
+            degreeHistogram = Arrays.copyOf(degreeHistogram, Math.max(2 * degreeHistogram.length, newDegree + 2));
+        }
+        degreeHistogram[oldDegree]--;
+        degreeHistogram[newDegree]++;
+        if (newDegree > oldDegree) {
+            if (newDegree == degeneracyBound) atLeastDegeneracyBound++;
+            maxDegree = Math.max(maxDegree, newDegree);
+        } else {
+            if (oldDegree == degeneracyBound) atLeastDegeneracyBound--;
+            while (maxDegree > 0 && degreeHistogram[maxDegree] == 0) maxDegree--;
+        }
+        fixDegeneracyBound();
+    }
+
+    /*
+        Restores: bound = max k with |{v : deg(v) >= k}| >= k + 1. Moves at most one step per degree change.
+     */
+    private void fixDegeneracyBound() {
+        while (degeneracyBound > 0 && atLeastDegeneracyBound < degeneracyBound + 1) {
+            degeneracyBound--;
+            atLeastDegeneracyBound += degreeHistogram[degeneracyBound];
+        }
+        while (degeneracyBound + 1 < degreeHistogram.length
+                && atLeastDegeneracyBound - degreeHistogram[degeneracyBound] >= degeneracyBound + 2) {
+            atLeastDegeneracyBound -= degreeHistogram[degeneracyBound];
+            degeneracyBound++;
+        }
+    }
+
+    // --------> COMPONENTS (union-find)
+
+    private int newComponent() {
+        int id = nextComponentId++;
+        if (id >= componentParents.length) {
+            componentParents = Arrays.copyOf(componentParents, Math.max(2 * componentParents.length, id + 1));
+        }
+        componentParents[id] = id;
+        numberOfComponents++;
+        return id;
+    }
+
+    private int find(int id) {
+        while (componentParents[id] != id) {
+            componentParents[id] = componentParents[componentParents[id]];
+            id = componentParents[id];
+        }
+        return id;
+    }
+
+    private void union(int id1, int id2) {
+        int root1 = find(id1);
+        int root2 = find(id2);
+        if (root1 != root2) {
+            componentParents[root1] = root2;
+            numberOfComponents--;
+        }
+    }
+
+    private void rebuildComponents() {
+        componentIds.clear();
+        componentParents = new int[Math.max(8, graph.getNumberOfVertices())];
+        nextComponentId = 0;
+        numberOfComponents = 0;
+        for (String name : graph.getVerticesMap().keySet()) {
+            componentIds.put(name, newComponent());
+        }
+        for (WeightedEdge e : graph.getEdges()) {
+            Integer id1 = componentIds.get(e.getVertex1().getName());
+            Integer id2 = componentIds.get(e.getVertex2().getName());
+            if (id1 != null && id2 != null) union(id1, id2);
+        }
+        componentsStale = false;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphStatistics = vertices: " + numberOfVertices + ", edges: " + numberOfEdges
+                + ", density: " + getDensity() + ", max degree: " + maxDegree
+                + ", degeneracy <= " + degeneracyBound + ", components: " + getNumberOfComponents();
+    }
+
+    // ----------------------------------------------
+    //  PROPERTY STATISTICS.
+    // ----------------------------------------------
+    // Running sums of a numeric edge property, NaN
+    // values are counted separately.
+    private static final class PropertyStatistics {
+        long count;
+        long nanCount;
+        double sum;
+        double absSum;
+
+        void add(double value) {
+            if (Double.isNaN(value)) {
+                nanCount++;
+            } else {
+                count++;
+                sum += value;
+                absSum += Math.abs(value);
+            }
+        }
+
+        void remove(double value) {
+            if (Double.isNaN(value)) {
+                nanCount--;
+            } else {
+                count--;
+                sum -= value;
+                absSum -= Math.abs(value);
+            }
+        }
+    }
+}
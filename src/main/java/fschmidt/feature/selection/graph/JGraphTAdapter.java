@@ -0,0 +1,237 @@
+package fschmidt.feature.selection.graph;
+
+import org.jgrapht.Graph;
+import org.jgrapht.GraphType;
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultGraphType;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+// ----------------------------------------------
+//  JGRAPHT ADAPTER.
+// ----------------------------------------------
+// Read-only JGraphT view on an UndirectedGraph.
+// Nothing is copied: vertex, edge and incidence
+// sets are live views on the maps of the graph
+// and its vertices, so any JGraphT algorithm can
+// run directly on our correlation graphs. If a
+// weight key is given, getEdgeWeight returns the
+// absolute value of that edge weight (property or
+// EdgeWeights column of the graph).
+//
+// @author fschmidt
+//
+public class JGraphTAdapter extends AbstractGraph<WeightedVertex, WeightedEdge> {
+
+    private static final GraphType TYPE = new DefaultGraphType.Builder()
+            .undirected()
+            .allowMultipleEdges(false)
+            .allowSelfLoops(false)
+            .weighted(true)
+            .modifiable(false)
+            .build();
+
+    private final UndirectedGraph graph;
+    private final String weightKey;
+    private final Set<WeightedVertex> vertexSet;
+
+    public JGraphTAdapter(UndirectedGraph graph) {
+        this(graph, null);
+    }
+
+    public JGraphTAdapter(UndirectedGraph graph, String weightKey) {
+        this.graph = graph;
+        this.weightKey = weightKey;
+        this.vertexSet = new AbstractSet<>() {
+            @Override
+            public Iterator<WeightedVertex> iterator() {
+                return Collections.unmodifiableCollection(graph.getVerticesMap().values()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return graph.getNumberOfVertices();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof WeightedVertex && graph.containsVertex(((WeightedVertex) o).getName());
+            }
+        };
+    }
+
+    public static Graph<WeightedVertex, WeightedEdge> of(UndirectedGraph graph) {
+        return new JGraphTAdapter(graph);
+    }
+
+    public UndirectedGraph getGraph() {
+        return graph;
+    }
+
+    @Override
+    public Set<WeightedEdge> getAllEdges(WeightedVertex sourceVertex, WeightedVertex targetVertex) {
+        if (!containsVertex(sourceVertex) || !containsVertex(targetVertex)) {
+            return null;
+        }
+        WeightedEdge edge = getEdge(sourceVertex, targetVertex);
+        return edge == null ? Collections.emptySet() : Collections.singleton(edge);
+    }
+
+    @Override
+    public WeightedEdge getEdge(WeightedVertex sourceVertex, WeightedVertex targetVertex) {
+        WeightedVertex source = graph.getVertex(sourceVertex.getName());
+        return source == null ? null : source.getEdges().get(targetVertex);
+    }
+
+    @Override
+    public boolean containsEdge(WeightedEdge edge) {
+        return graph.getEdges().contains(edge);
+    }
+
+    @Override
+    public boolean containsVertex(WeightedVertex vertex) {
+        return vertexSet.contains(vertex);
+    }
+
+    @Override
+    public Set<WeightedEdge> edgeSet() {
+        return graph.getEdges();
+    }
+
+    @Override
+    public int degreeOf(WeightedVertex vertex) {
+        return resolve(vertex).getEdges().size();
+    }
+
+    @Override
+    public Set<WeightedEdge> edgesOf(WeightedVertex vertex) {
+        Map<WeightedVertex, WeightedEdge> edges = resolve(vertex).getEdges();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<WeightedEdge> iterator() {
+                return Collections.unmodifiableCollection(edges.values()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return edges.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof WeightedEdge)) return false;
+                WeightedEdge edge = (WeightedEdge) o;
+                return edge.equals(edges.get(edge.getVertex1())) || edge.equals(edges.get(edge.getVertex2()));
+            }
+        };
+    }
+
+    @Override
+    public int inDegreeOf(WeightedVertex vertex) {
+        return degreeOf(vertex);
+    }
+
+    @Override
+    public Set<WeightedEdge> incomingEdgesOf(WeightedVertex vertex) {
+        return edgesOf(vertex);
+    }
+
+    @Override
+    public int outDegreeOf(WeightedVertex vertex) {
+        return degreeOf(vertex);
+    }
+
+    @Override
+    public Set<WeightedEdge> outgoingEdgesOf(WeightedVertex vertex) {
+        return edgesOf(vertex);
+    }
+
+    @Override
+    public Set<WeightedVertex> vertexSet() {
+        return vertexSet;
+    }
+
+    @Override
+    public WeightedVertex getEdgeSource(WeightedEdge edge) {
+        return edge.getVertex1();
+    }
+
+    @Override
+    public WeightedVertex getEdgeTarget(WeightedEdge edge) {
+        return edge.getVertex2();
+    }
+
+    @Override
+    public GraphType getType() {
+        return TYPE;
+    }
+
+    @Override
+    public double getEdgeWeight(WeightedEdge edge) {
+        if (weightKey == null) {
+            return Graph.DEFAULT_EDGE_WEIGHT;
+        }
+        return Math.abs(graph.getWeight(edge, weightKey));
+    }
+
+    // --------> READ ONLY
+
+    @Override
+    public Supplier<WeightedVertex> getVertexSupplier() {
+        return null;
+    }
+
+    @Override
+    public Supplier<WeightedEdge> getEdgeSupplier() {
+        return null;
+    }
+
+    @Override
+    public WeightedEdge addEdge(WeightedVertex sourceVertex, WeightedVertex targetVertex) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public boolean addEdge(WeightedVertex sourceVertex, WeightedVertex targetVertex, WeightedEdge edge) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public WeightedVertex addVertex() {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public boolean addVertex(WeightedVertex vertex) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public WeightedEdge removeEdge(WeightedVertex sourceVertex, WeightedVertex targetVertex) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public boolean removeEdge(WeightedEdge edge) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public boolean removeVertex(WeightedVertex vertex) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    @Override
+    public void setEdgeWeight(WeightedEdge edge, double weight) {
+        throw new UnsupportedOperationException("JGraphTAdapter is a read-only view");
+    }
+
+    private WeightedVertex resolve(WeightedVertex vertex) {
+        WeightedVertex resolved = graph.getVertex(vertex.getName());
+        if (resolved == null) {
+            throw new IllegalArgumentException("no such vertex in graph: " + vertex);
+        }
+        return resolved;
+    }
+}
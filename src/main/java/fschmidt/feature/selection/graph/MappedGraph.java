@@ -0,0 +1,260 @@
+package fschmidt.feature.selection.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static fschmidt.feature.selection.graph.GraphFile.*;
+
+// ----------------------------------------------
+//  MAPPED GRAPH.
+// ----------------------------------------------
+// Read-only view on a file written by GraphFile.
+// All sections are memory mapped; vertices and
+// edges are addressed by their int index and no
+// objects are created except for the vertex names
+// that are explicitly requested. Vertex indices
+// follow the lexicographic order of the names.
+//
+// @author fschmidt
+//
+public class MappedGraph {
+
+    private final int numberOfVertices;
+    private final int numberOfEdges;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer nameBytes;
+    private final IntBuffer rowOffsets;
+    private final IntBuffer adjacency;
+    private final IntBuffer adjacencyEdges;
+    private final IntBuffer endpoints;
+    private final Map<String, Column> vertexColumns = new LinkedHashMap<>();
+    private final Map<String, Column> edgeColumns = new LinkedHashMap<>();
+
+    MappedGraph(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_INTS * Integer.BYTES).order(ORDER);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a graph file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported graph file version " + version + ": " + path);
+            }
+            numberOfVertices = header.getInt();
+            numberOfEdges = header.getInt();
+            int vertexColumnCount = header.getInt();
+            int edgeColumnCount = header.getInt();
+
+            int sections = FIXED_SECTIONS + vertexColumnCount + edgeColumnCount;
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_INTS * Integer.BYTES, (long) sections * 2 * Long.BYTES).order(ORDER);
+            MappedByteBuffer[] mapped = new MappedByteBuffer[sections];
+            for (int s = 0; s < sections; s++) {
+                long offset = table.getLong();
+                long length = table.getLong();
+                mapped[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                mapped[s].order(ORDER);
+            }
+
+            nameOffsets = mapped[NAME_OFFSETS].asIntBuffer();
+            nameBytes = mapped[NAME_BYTES];
+            rowOffsets = mapped[ROW_OFFSETS].asIntBuffer();
+            adjacency = mapped[ADJACENCY].asIntBuffer();
+            adjacencyEdges = mapped[ADJACENCY_EDGES].asIntBuffer();
+            endpoints = mapped[ENDPOINTS].asIntBuffer();
+
+            ByteBuffer info = mapped[COLUMN_INFO];
+            for (int c = 0; c < vertexColumnCount + edgeColumnCount; c++) {
+                byte type = info.get();
+                byte[] name = new byte[info.getInt()];
+                info.get(name);
+                Column column = new Column(type, mapped[FIXED_SECTIONS + c]);
+                if (c < vertexColumnCount) {
+                    vertexColumns.put(new String(name, StandardCharsets.UTF_8), column);
+                } else {
+                    edgeColumns.put(new String(name, StandardCharsets.UTF_8), column);
+                }
+            }
+        }
+    }
+
+    public int getNumberOfVertices() {
+        return numberOfVertices;
+    }
+
+    public int getNumberOfEdges() {
+        return numberOfEdges;
+    }
+
+    public String getVertexName(int vertex) {
+        int from = nameOffsets.get(vertex);
+        byte[] name = new byte[nameOffsets.get(vertex + 1) - from];
+        nameBytes.duplicate().position(from).get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /*
+        Binary search on the sorted vertex dictionary, -1 if the vertex is unknown.
+     */
+    public int indexOf(String name) {
+        int low = 0;
+        int high = numberOfVertices - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getVertexName(mid).compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int getDegree(int vertex) {
+        return rowOffsets.get(vertex + 1) - rowOffsets.get(vertex);
+    }
+
+    public int getNeighbor(int vertex, int k) {
+        return adjacency.get(rowOffsets.get(vertex) + k);
+    }
+
+    public int getEdge(int vertex, int k) {
+        return adjacencyEdges.get(rowOffsets.get(vertex) + k);
+    }
+
+    /*
+        Binary search in the sorted adjacency row of vertex1, -1 if there is no such edge.
+     */
+    public int getEdgeBetween(int vertex1, int vertex2) {
+        int low = rowOffsets.get(vertex1);
+        int high = rowOffsets.get(vertex1 + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int neighbor = adjacency.get(mid);
+            if (neighbor < vertex2) {
+                low = mid + 1;
+            } else if (neighbor > vertex2) {
+                high = mid - 1;
+            } else {
+                return adjacencyEdges.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    public int getEdgeVertex1(int edge) {
+        return endpoints.get(2 * edge);
+    }
+
+    public int getEdgeVertex2(int edge) {
+        return endpoints.get(2 * edge + 1);
+    }
+
+    public Set<String> getVertexColumns() {
+        return Collections.unmodifiableSet(vertexColumns.keySet());
+    }
+
+    public Set<String> getEdgeColumns() {
+        return Collections.unmodifiableSet(edgeColumns.keySet());
+    }
+
+    public double getVertexValue(String column, int vertex) {
+        return column(vertexColumns, column).get(vertex);
+    }
+
+    public double getEdgeValue(String column, int edge) {
+        return column(edgeColumns, column).get(edge);
+    }
+
+    /*
+        Materializes the mapped graph as a regular (mutable) UndirectedGraph. Missing values do not become
+        properties, weight columns come back as edge properties.
+     */
+    public UndirectedGraph toUndirectedGraph() {
+        UndirectedGraph graph = new UndirectedGraph();
+        WeightedVertex[] vertices = new WeightedVertex[numberOfVertices];
+        for (int v = 0; v < numberOfVertices; v++) {
+            vertices[v] = new WeightedVertex(getVertexName(v));
+            for (Map.Entry<String, Column> column : vertexColumns.entrySet()) {
+                column.getValue().copyTo(vertices[v], column.getKey(), v);
+            }
+            graph.addVertex(vertices[v]);
+        }
+        for (int e = 0; e < numberOfEdges; e++) {
+            WeightedEdge edge = graph.addEdge(vertices[getEdgeVertex1(e)], vertices[getEdgeVertex2(e)]);
+            if (edge == null) continue;
+            for (Map.Entry<String, Column> column : edgeColumns.entrySet()) {
+                column.getValue().copyTo(edge, column.getKey(), e);
+            }
+        }
+        return graph;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedGraph = vertices: " + numberOfVertices + ", edges: " + numberOfEdges
+                + ", vertex columns: " + vertexColumns.keySet() + ", edge columns: " + edgeColumns.keySet();
+    }
+
+    private static Column column(Map<String, Column> columns, String name) {
+        Column column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown column: " + name);
+        }
+        return column;
+    }
+
+    // ----------------------------------------------
+    //  COLUMN.
+    // ----------------------------------------------
+    // A typed, memory mapped property column.
+    private static final class Column {
+        private final byte type;
+        private final ByteBuffer values;
+
+        Column(byte type, ByteBuffer values) {
+            this.type = type;
+            this.values = values;
+        }
+
+        double get(int index) {
+            switch (type) {
+                case FLOAT32:
+                    return values.getFloat(index * Float.BYTES);
+                case INT64:
+                    long value = values.getLong(index * Long.BYTES);
+                    return value == Long.MIN_VALUE ? Double.NaN : value;
+                default:
+                    return values.getDouble(index * Double.BYTES);
+            }
+        }
+
+        /*
+            Missing values (NaN, Long.MIN_VALUE) of every type are left out, like in the graph that was written.
+         */
+        void copyTo(WeightedGraphElement element, String key, int index) {
+            switch (type) {
+                case FLOAT32:
+                    float f = values.getFloat(index * Float.BYTES);
+                    if (!Float.isNaN(f)) element.addProperty(key, f);
+                    break;
+                case INT64:
+                    long l = values.getLong(index * Long.BYTES);
+                    if (l != Long.MIN_VALUE) element.addProperty(key, l);
+                    break;
+                default:
+                    double d = values.getDouble(index * Double.BYTES);
+                    if (!Double.isNaN(d)) element.addProperty(key, d);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package fschmidt.feature.selection.graph;
 
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * @author fschmidt
@@ -9,58 +10,154 @@ public class UndirectedGraph {
 
     private final Map<String, WeightedVertex> vertices;
     private final Set<WeightedEdge> edges;
+    private final Map<String, EdgeWeights> edgeWeights;
+    private final Map<String, EdgeWeights> edgeWeightsView;
+    private final GraphStatistics statistics;
 
     public UndirectedGraph() {
         vertices = new HashMap<>();
         edges = new HashSet<>();
+        edgeWeights = new LinkedHashMap<>();
+        edgeWeightsView = Collections.unmodifiableMap(edgeWeights);
+        statistics = new GraphStatistics(this);
     }
 
     public void addVertex(WeightedVertex vertex) {
         if (!vertices.containsKey(vertex.getName())) {
             vertices.put(vertex.getName(), vertex);
+            statistics.vertexAdded(vertex);
         }
     }
 
+    /*
+        Both vertices have to be vertices of this graph (the added instances), otherwise an
+        IllegalArgumentException is thrown. Null if the edge already exists.
+     */
     public WeightedEdge addEdge(WeightedVertex vertex1, WeightedVertex vertex2) {
+        checkRegistered(vertex1);
+        checkRegistered(vertex2);
         if (containsEdge(vertex1, vertex2)) {
             return null; //Dont add already existing edges
         } else {
             WeightedEdge edge = new WeightedEdge(vertex1, vertex2);
-            vertex1.addEdge(vertex2, edge);
-            vertex2.addEdge(vertex1, edge);
-            edges.add(edge);
+            attachEdge(edge);
             return edge;
         }
     }
 
+    /*
+        Wires an edge created elsewhere (e.g. by the ConcurrentGraphBuilder) into the graph.
+     */
+    boolean attachEdge(WeightedEdge edge) {
+        checkRegistered(edge.getVertex1());
+        checkRegistered(edge.getVertex2());
+        if (containsEdge(edge.getVertex1(), edge.getVertex2())) {
+            return false;
+        }
+        edge.getVertex1().addEdge(edge.getVertex2(), edge);
+        edge.getVertex2().addEdge(edge.getVertex1(), edge);
+        edges.add(edge);
+        edge.statistics = statistics;
+        statistics.edgeAdded(edge);
+        return true;
+    }
+
+    // an edge on another instance (or an unknown vertex) would only be in the adjacency map of that instance
+    private void checkRegistered(WeightedVertex vertex) {
+        if (vertices.get(vertex.getName()) != vertex) {
+            throw new IllegalArgumentException("not a vertex of this graph: " + vertex.getName());
+        }
+    }
+
     public boolean containsEdge(WeightedVertex vertex1, WeightedVertex vertex2) {
         return getEdge(vertex1, vertex2) != null;
     }
 
+    /*
+        Edge lookup through the adjacency map of vertex1, O(1).
+     */
     public WeightedEdge getEdge(WeightedVertex vertex1, WeightedVertex vertex2) {
-        for (Iterator<WeightedEdge> iter = edges.iterator(); iter.hasNext(); ) {
-            WeightedEdge currEdge = iter.next();
-            if (currEdge.getVertex1().equals(vertex1) || currEdge.getVertex1().equals(vertex2)) {
-                if (currEdge.getVertex2().equals(vertex1) || currEdge.getVertex2().equals(vertex2)) {
-                    // Any combination of vertex1-vertex1, vertex2-vertex2, vertex1-vertex2, vertex2-vertex1
-                    // Undirected Graph
-                    return currEdge;
-                }
-            }
+        WeightedVertex v1 = vertices.get(vertex1.getName());
+        return v1 == null ? null : v1.getEdges().get(vertex2);
+    }
+
+    /*
+        Registers a weight column for all edges under the key, e.g. a correlation matrix. It takes precedence
+        over an edge property of the same name. Null unregisters the column.
+     */
+    public void setEdgeWeights(String key, EdgeWeights weights) {
+        if (weights == null) {
+            edgeWeights.remove(key);
+        } else {
+            edgeWeights.put(key, weights);
         }
-        return null;
+        statistics.edgeWeightsChanged(key);
+    }
+
+    public Map<String, EdgeWeights> getEdgeWeights() {
+        return edgeWeightsView;
+    }
+
+    /*
+        Weight of the edge from the registered column, else from its numeric property, else NaN.
+     */
+    public double getWeight(WeightedEdge edge, String key) {
+        EdgeWeights weights = edgeWeights.get(key);
+        if (weights != null) {
+            return weights.getWeight(edge.getVertex1().getName(), edge.getVertex2().getName());
+        }
+        Object weight = edge.getProperty(key);
+        return weight instanceof Number ? ((Number) weight).doubleValue() : Double.NaN;
     }
 
     public void removeWeightedEdges(String key, double maxWeight) {
+        removeEdgesIf(e -> {
+            double weight = getWeight(e, key);
+            return Double.isNaN(weight) || Math.abs(weight) > maxWeight || Math.abs(weight) < -maxWeight;
+        });
+    }
+
+    /*
+        Removes the edge from the edge set and from the adjacency maps of both vertices, O(1).
+     */
+    public boolean removeEdge(WeightedEdge edge) {
+        WeightedEdge stored = getEdge(edge.getVertex1(), edge.getVertex2());
+        if (stored == null) {
+            return false;
+        }
+        edges.remove(stored);
+        detach(stored);
+        return true;
+    }
+
+    public WeightedEdge removeEdge(WeightedVertex vertex1, WeightedVertex vertex2) {
+        WeightedEdge edge = getEdge(vertex1, vertex2);
+        if (edge != null) {
+            removeEdge(edge);
+        }
+        return edge;
+    }
+
+    public int removeEdges(Collection<WeightedEdge> toRemove) {
+        int removed = 0;
+        for (WeightedEdge e : toRemove) {
+            if (removeEdge(e)) removed++;
+        }
+        return removed;
+    }
+
+    public int removeEdgesIf(Predicate<WeightedEdge> filter) {
+        int removed = 0;
         Iterator<WeightedEdge> edgeIter = edges.iterator();
         while (edgeIter.hasNext()) {
             WeightedEdge e = edgeIter.next();
-            Double weight = (Double) e.getProperty(key);
-            if (Double.isNaN(weight) || Math.abs(weight) > maxWeight || Math.abs(weight) < -maxWeight) {
-                e.remove();
+            if (filter.test(e)) {
                 edgeIter.remove();
+                detach(e);
+                removed++;
             }
         }
+        return removed;
     }
 
     public List<WeightedEdge> getAllEdgesToBeRemoved(String key, double maxWeight) {
@@ -68,7 +165,7 @@ public class UndirectedGraph {
         List<WeightedEdge> allEdges = new ArrayList<>();
         while (edgeIter.hasNext()) {
             WeightedEdge e = edgeIter.next();
-            Double weight = (Double) e.getProperty(key);
+            double weight = getWeight(e, key);
             if (Double.isNaN(weight) || Math.abs(weight) > maxWeight || Math.abs(weight) < -maxWeight) {
                 allEdges.add(e);
             }
@@ -76,6 +173,10 @@ public class UndirectedGraph {
         return allEdges;
     }
 
+    public Set<WeightedEdge> getEdges() {
+        return Collections.unmodifiableSet(edges);
+    }
+
     public Set<WeightedVertex> getVertices() {
         return new HashSet<>(vertices.values());
     }
@@ -100,6 +201,10 @@ public class UndirectedGraph {
         return vertices.size();
     }
 
+    public GraphStatistics getStatistics() {
+        return statistics;
+    }
+
     public UndirectedGraph copy() {
         UndirectedGraph graph = new UndirectedGraph();
         for (WeightedVertex v : vertices.values()) {
@@ -109,6 +214,7 @@ public class UndirectedGraph {
             }
             graph.addVertex(newV);
         }
+        graph.edgeWeights.putAll(edgeWeights);
         for (WeightedEdge e : edges) {
             WeightedVertex newV1 = graph.getVertex(e.getVertex1().getName());
             WeightedVertex newV2 = graph.getVertex(e.getVertex2().getName());
@@ -126,8 +232,6 @@ public class UndirectedGraph {
         return "Graph = vertices: " + vertices + ", edges: " + edges;
     }
 
-    //TODO: add function to get information about set of vertices/edges (eg avg, sum, etc)
-
     public double getAverageCorrelation(List<String> verticesString, String propertyName) {
         double propertyAverage = 0.0;
         int totalEdges = 0;
@@ -137,7 +241,7 @@ public class UndirectedGraph {
                 WeightedVertex vertexJ = vertices.get(verticesString.get(j));
                 WeightedEdge foundEdge = getEdge(vertexI, vertexJ);
                 if (j != i && foundEdge != null) {
-                    propertyAverage += Math.abs((double) foundEdge.getProperty(propertyName));
+                    propertyAverage += Math.abs(getWeight(foundEdge, propertyName));
                     totalEdges++;
                 }
 
@@ -150,15 +254,48 @@ public class UndirectedGraph {
         Iterator<WeightedEdge> edgeIter = edges.iterator();
         while (edgeIter.hasNext()) {
             WeightedEdge e = edgeIter.next();
-            Double weight = (Double) e.getProperty(key);
+            double weight = getWeight(e, key);
             if (weight == byWeight) return e;
         }
         return null;
     }
 
-    public void removeVertex(WeightedVertex vertex) {
-        edges.removeIf(e -> e.getVertex1().equals(vertex) || e.getVertex2().equals(vertex));
-        vertices.remove(vertex.getName());
+    /*
+        Removes the vertex and all its incident edges, O(degree). The neighbours forget the vertex as well.
+     */
+    public boolean removeVertex(WeightedVertex vertex) {
+        WeightedVertex stored = vertices.remove(vertex.getName());
+        if (stored == null) {
+            return false;
+        }
+        for (WeightedEdge e : new ArrayList<>(stored.getEdges().values())) {
+            edges.remove(e);
+            detach(e);
+        }
+        statistics.vertexRemoved(stored);
+        return true;
+    }
+
+    private void detach(WeightedEdge e) {
+        e.remove();
+        e.statistics = null;
+        statistics.edgeRemoved(e);
+    }
+
+    public int removeVertices(Collection<WeightedVertex> toRemove) {
+        int removed = 0;
+        for (WeightedVertex v : toRemove) {
+            if (removeVertex(v)) removed++;
+        }
+        return removed;
+    }
+
+    public int removeVerticesIf(Predicate<WeightedVertex> filter) {
+        List<WeightedVertex> toRemove = new ArrayList<>();
+        for (WeightedVertex v : vertices.values()) {
+            if (filter.test(v)) toRemove.add(v);
+        }
+        return removeVertices(toRemove);
     }
 
     @Override
@@ -9,6 +9,7 @@ public class WeightedEdge extends WeightedGraphElement {
 
     private final WeightedVertex vertex1;
     private final WeightedVertex vertex2;
+    GraphStatistics statistics; // set while the edge belongs to a graph
 
     public WeightedEdge(WeightedVertex vertex1, WeightedVertex vertex2) {
         this.vertex1 = vertex1;
@@ -16,8 +17,15 @@ public class WeightedEdge extends WeightedGraphElement {
     }
 
     public void remove() {
-        vertex1.getNeighbors().remove(vertex2);
-        vertex2.getNeighbors().remove(vertex1);
+        vertex1.removeEdge(vertex2);
+        vertex2.removeEdge(vertex1);
+    }
+
+    @Override
+    protected void propertyChanged(String key, Object oldValue, Object newValue) {
+        if (statistics != null) {
+            statistics.edgePropertyChanged(key, oldValue, newValue);
+        }
     }
 
     public WeightedVertex getVertex1() {
@@ -11,13 +11,21 @@ public abstract class WeightedGraphElement {
     private Map<String, Object> properties = new HashMap<>();
 
     public void addProperty(String key, Object data) {
-        properties.put(key, data);
+        Object old = properties.put(key, data);
+        propertyChanged(key, old, data);
+    }
+
+    protected void propertyChanged(String key, Object oldValue, Object newValue) {
     }
 
     public Object getProperty(String key) {
         return properties.get(key);
     }
 
+    /*
+        The property map itself. Changes made directly in it bypass propertyChanged, so the GraphStatistics of the
+        graph do not see them; use addProperty.
+     */
     public Map<String, Object> getProperties() {
         return properties;
     }
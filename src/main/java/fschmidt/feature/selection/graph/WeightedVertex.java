@@ -22,6 +22,10 @@ public class WeightedVertex extends WeightedGraphElement {
         edges.put(vertex, edge);
     }
 
+    public WeightedEdge removeEdge(WeightedVertex vertex) {
+        return edges.remove(vertex);
+    }
+
     public Set<WeightedVertex> getNeighbors() {
         return edges.keySet();
     }
@@ -0,0 +1,202 @@
+package fschmidt.feature.selection.ranking;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// ----------------------------------------------
+//  DECAYED CLASS HISTOGRAMS.
+// ----------------------------------------------
+// Streaming replacement of BinTargetFeatureValues
+// for drifting data: per dimension and target
+// (true, false) a histogram with equal-width bins,
+// in which every value is weighted with
+// 2^(-age / halfLife). Instead of decaying all bins
+// on every update, new values get the growing
+// weight 2^((t - t0) / halfLife); when it becomes
+// too large all bins are rescaled once and t0 is
+// reset. So an update costs O(1) per value and the
+// KS distance of the recent past can be queried at
+// any time, without keeping the values.
+//
+// The KS distance is the largest difference of the
+// two class CDFs at the bin edges, a lower bound
+// of the exact statistic that converges with the
+// number of bins. Values outside of the range fall
+// into the first or last bin, NaN values are
+// skipped.
+//
+// @author fschmidt
+//
+public class DecayedClassHistograms {
+
+    private static final Logger logger = Logger.getLogger(DecayedClassHistograms.class.getName());
+    // rescale before the weights of new values overflow
+    private static final double MAX_WEIGHT = 1e150;
+
+    private final String[] names;
+    private final double[] lower;
+    private final double[] upper;
+    private final int bins;
+    private final double halfLife;
+    // [target][dimension][bin], target 0 = false, 1 = true
+    private final double[][][] histograms;
+    private final double[][] totals;
+    private double referenceTime = Double.NaN;
+    private double time = Double.NaN;
+
+    /*
+        halfLife may be infinite (no decay), then the histograms describe the whole stream.
+     */
+    public DecayedClassHistograms(String[] names, double[] lower, double[] upper, int bins, double halfLife) {
+        if (names.length != lower.length || names.length != upper.length) {
+            throw new IllegalArgumentException("expected " + names.length + " bounds, got " + lower.length + " and " + upper.length);
+        }
+        if (bins < 1) {
+            throw new IllegalArgumentException("bins must be positive, got " + bins);
+        }
+        if (!(halfLife > 0.0)) {
+            throw new IllegalArgumentException("halfLife must be positive, got " + halfLife);
+        }
+        this.names = names.clone();
+        this.lower = lower.clone();
+        this.upper = upper.clone();
+        this.bins = bins;
+        this.halfLife = halfLife;
+        this.histograms = new double[2][names.length][bins];
+        this.totals = new double[2][names.length];
+    }
+
+    /*
+        Ranges of the histograms from a warm-up sample, e.g. Dataset.values().
+     */
+    public static DecayedClassHistograms of(String[] header, List<double[]> values, int bins, double halfLife) {
+        double[] lower = new double[header.length];
+        double[] upper = new double[header.length];
+        Arrays.fill(lower, Double.POSITIVE_INFINITY);
+        Arrays.fill(upper, Double.NEGATIVE_INFINITY);
+        for (double[] row : values) {
+            for (int i = 0; i < header.length; i++) {
+                if (Double.isNaN(row[i])) continue;
+                lower[i] = Math.min(lower[i], row[i]);
+                upper[i] = Math.max(upper[i], row[i]);
+            }
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (lower[i] > upper[i]) {
+                lower[i] = 0.0;
+                upper[i] = 0.0;
+            }
+        }
+        return new DecayedClassHistograms(header, lower, upper, bins, halfLife);
+    }
+
+    /*
+        Adds one row one time unit after the previous one.
+     */
+    public void update(boolean target, double[] row) {
+        update(target, row, Double.isNaN(time) ? 0.0 : time + 1.0);
+    }
+
+    /*
+        Adds one row observed at the given (non-decreasing) time, values in the order of the names.
+     */
+    public void update(boolean target, double[] row, double time) {
+        if (row.length != names.length) {
+            throw new IllegalArgumentException("expected " + names.length + " values, got " + row.length);
+        }
+        double weight = weightAt(time);
+        double[][] histogram = histograms[target ? 1 : 0];
+        double[] total = totals[target ? 1 : 0];
+        for (int i = 0; i < row.length; i++) {
+            if (Double.isNaN(row[i])) continue;
+            histogram[i][bin(i, row[i])] += weight;
+            total[i] += weight;
+        }
+    }
+
+    // weight of a value at the given time relative to the reference time, rescales all bins when needed
+    private double weightAt(double now) {
+        if (Double.isNaN(time)) {
+            referenceTime = now;
+        } else if (now < time) {
+            throw new IllegalArgumentException("time must not decrease, got " + now + " after " + time);
+        }
+        time = now;
+        double weight = Math.pow(2.0, (now - referenceTime) / halfLife);
+        if (weight > MAX_WEIGHT) {
+            for (int target = 0; target < 2; target++) {
+                for (int i = 0; i < names.length; i++) {
+                    totals[target][i] /= weight;
+                    for (int b = 0; b < bins; b++) {
+                        histograms[target][i][b] /= weight;
+                    }
+                }
+            }
+            referenceTime = now;
+            weight = 1.0;
+        }
+        return weight;
+    }
+
+    private int bin(int i, double value) {
+        double width = upper[i] - lower[i];
+        if (!(width > 0.0)) {
+            return 0;
+        }
+        int b = (int) ((value - lower[i]) / width * bins);
+        return Math.max(0, Math.min(bins - 1, b));
+    }
+
+    /*
+        KS distance of the decayed class distributions per dimension, like the KS ranker on
+        BinTargetFeatureValues. Empty if one of the classes has not been seen yet.
+     */
+    public Map<String, Double> kolmogorovSmirnov() {
+        Map<String, Double> distances = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            double totalFalse = totals[0][i];
+            double totalTrue = totals[1][i];
+            if (totalFalse == 0.0 || totalTrue == 0.0) {
+                logger.warning("Kolmogorov-Smirnov distance cannot be computed. Either normal or anomaly collection empty.");
+                return new LinkedHashMap<>();
+            }
+            double cdfFalse = 0.0;
+            double cdfTrue = 0.0;
+            double distance = 0.0;
+            for (int b = 0; b < bins; b++) {
+                cdfFalse += histograms[0][i][b] / totalFalse;
+                cdfTrue += histograms[1][i][b] / totalTrue;
+                distance = Math.max(distance, Math.abs(cdfTrue - cdfFalse));
+            }
+            distances.put(names[i], Math.min(1.0, distance));
+        }
+        return distances;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public double getHalfLife() {
+        return halfLife;
+    }
+
+    /*
+        Decayed number of values of a dimension seen for the target, relative to the time of the last update.
+     */
+    public double getEffectiveCount(boolean target, int i) {
+        return Double.isNaN(time) ? 0.0 : totals[target ? 1 : 0][i] / weightOfLastUpdate();
+    }
+
+    private double weightOfLastUpdate() {
+        return Math.pow(2.0, (time - referenceTime) / halfLife);
+    }
+
+    @Override
+    public String toString() {
+        return "DecayedClassHistograms = dimensions: " + names.length + ", bins: " + bins + ", half-life: " + halfLife;
+    }
+}
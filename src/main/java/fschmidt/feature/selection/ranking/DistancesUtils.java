@@ -1,5 +1,6 @@
 package fschmidt.feature.selection.ranking;
 
+import fschmidt.feature.selection.Kernels;
 import weka.core.matrix.DoubleVector;
 
 /**
@@ -34,33 +35,15 @@ public enum  DistancesUtils {
     // --------> METHODS
 
     public static double hamming(double[] a, double[] b) {
-        double dist = 0;
-        for (int i = 0; i < a.length; ++i) {
-            double diff = (a[i] - b[i]);
-            dist += Math.abs(diff);
-        }
-        return dist;
+        return Kernels.absoluteDifferenceSum(a, b);
     }
 
     public static double euclidean(double[] a, double[] b) {
-        double dist = 0;
-        for (int i = 0; i < a.length; ++i) {
-            double diff = (a[i] - b[i]);
-            dist += diff * diff;
-        }
-        return Math.sqrt(dist);
+        return Math.sqrt(Kernels.squaredDifferenceSum(a, b));
     }
 
     public static double bhattacharyya(double[] a, double[] b) {
-        double dist = 0.0;
-        double[] mixedData = new double[a.length];
-        for (int i = 0; i < a.length; i++) {
-            mixedData[i] = Math.sqrt(a[i] * b[i]);
-        }
-        for (int i = 0; i < mixedData.length; i++) {
-            dist += mixedData[i];
-        }
-        return dist;
+        return Kernels.sqrtProductSum(a, b);
     }
 
     public static double cosine(double[] inst1, double[] inst2) {
@@ -90,12 +73,7 @@ public enum  DistancesUtils {
     }
 
     public static double kullbackLeibler(double[] inst1, double[] inst2) {
-        double divergence = 0.0;
-        for (int i = 0; i < inst1.length; ++i) {
-            if (inst1[i] != 0 && inst2[i] != 0) {
-                divergence += inst1[i] * Math.log(inst1[i] / inst2[i]);
-            }
-        }
+        double divergence = Kernels.relativeEntropy(inst1, inst2);
         divergence /= Math.log(2);
         return divergence;
     }
@@ -1,7 +1,10 @@
 package fschmidt.feature.selection.ranking;
 
 import fschmidt.feature.selection.Datasets.Dataset;
+import fschmidt.feature.selection.correlation.ColumnStore;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -52,7 +55,59 @@ public class FeatureSelectionBinTargetRanking {
             featureValues.update(groundTruth.get(i), header, values.get(i));
         }
 
-        var rankedResultMap = ranker.rank(featureValues);
+        return filter(ranker.rank(featureValues));
+    }
+
+    /*
+        Out-of-core variant: ranks the features of the store one column at a time, so only one column and its
+        split by the ground truth are in memory instead of all samples. Filtered as above.
+     */
+    public Map<String, Double> run(ColumnStore store, List<Boolean> groundTruth) throws IOException {
+        if (groundTruth.size() != store.getNumberOfSamples()) {
+            throw new IllegalArgumentException("expected " + store.getNumberOfSamples() + " targets, got " + groundTruth.size());
+        }
+        boolean[] targets = new boolean[groundTruth.size()];
+        int positives = 0;
+        for (int s = 0; s < targets.length; s++) {
+            targets[s] = groundTruth.get(s);
+            if (targets[s]) positives++;
+        }
+        if (positives == 0 || positives == targets.length) {
+            throw new IllegalArgumentException("ground truth needs samples of both classes");
+        }
+        double[] trueValues = new double[positives];
+        double[] falseValues = new double[targets.length - positives];
+        String[] names = store.getNames();
+        Map<String, Double> distances = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            double[] column = store.column(i);
+            int t = 0;
+            int f = 0;
+            for (int s = 0; s < column.length; s++) {
+                if (targets[s]) {
+                    trueValues[t++] = column[s];
+                } else {
+                    falseValues[f++] = column[s];
+                }
+            }
+            distances.put(names[i], ranker.getDistance(trueValues, falseValues));
+        }
+        return filter(distances);
+    }
+
+    /*
+        Streaming variant: ranks by the KS distance of the decayed class histograms, filtered as above. Answers the
+        current ranking at any time without rescanning the history. The histograms only provide the KS distance, so
+        the ranker of this instance has to be a KolmogorovSmirnovDistance.
+     */
+    public Map<String, Double> run(DecayedClassHistograms histograms) {
+        if (!(ranker instanceof Distances.KolmogorovSmirnovDistance)) {
+            throw new IllegalArgumentException("decayed class histograms only rank by KS distance, not by " + ranker.getName());
+        }
+        return filter(histograms.kolmogorovSmirnov());
+    }
+
+    private Map<String, Double> filter(Map<String, Double> rankedResultMap) {
         int numberOfSamplesSent;
         if(newFilter){
             numberOfSamplesSent = calculateSize(rankedResultMap, filterProportion);
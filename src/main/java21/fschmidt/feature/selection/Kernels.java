@@ -0,0 +1,55 @@
+package fschmidt.feature.selection;
+
+// ----------------------------------------------
+//  KERNELS (JDK 21).
+// ----------------------------------------------
+// Multi-release version of Kernels, loaded from
+// META-INF/versions/21 on JDK 21 and newer. The
+// Vector API is an incubator module, so the SIMD
+// kernels (VectorKernels) are only linked if the
+// module is part of the boot layer and the system
+// property fschmidt.kernels.scalar is not set;
+// otherwise the scalar loops are used as on
+// Java 11.
+//
+// @author fschmidt
+//
+public enum Kernels {
+    ;
+
+    private static final boolean VECTORIZED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                    && !Boolean.getBoolean("fschmidt.kernels.scalar");
+
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    public static double dot(double[] a, double[] b, int from, int to) {
+        return VECTORIZED ? VectorKernels.dot(a, b, from, to) : ScalarKernels.dot(a, b, from, to);
+    }
+
+    public static double dot(double[] a, double[] b) {
+        return dot(a, b, 0, a.length);
+    }
+
+    public static double[] moments(double[] x, double[] y) {
+        return VECTORIZED ? VectorKernels.moments(x, y) : ScalarKernels.moments(x, y);
+    }
+
+    public static double absoluteDifferenceSum(double[] a, double[] b) {
+        return VECTORIZED ? VectorKernels.absoluteDifferenceSum(a, b) : ScalarKernels.absoluteDifferenceSum(a, b);
+    }
+
+    public static double squaredDifferenceSum(double[] a, double[] b) {
+        return VECTORIZED ? VectorKernels.squaredDifferenceSum(a, b) : ScalarKernels.squaredDifferenceSum(a, b);
+    }
+
+    public static double sqrtProductSum(double[] a, double[] b) {
+        return VECTORIZED ? VectorKernels.sqrtProductSum(a, b) : ScalarKernels.sqrtProductSum(a, b);
+    }
+
+    public static double relativeEntropy(double[] a, double[] b) {
+        return VECTORIZED ? VectorKernels.relativeEntropy(a, b) : ScalarKernels.relativeEntropy(a, b);
+    }
+}
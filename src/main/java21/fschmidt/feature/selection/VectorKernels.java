@@ -0,0 +1,134 @@
+package fschmidt.feature.selection;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// ----------------------------------------------
+//  VECTOR KERNELS.
+// ----------------------------------------------
+// SIMD versions of the scalar kernels with the
+// preferred vector shape of the CPU. Lanes are
+// accumulated separately and reduced at the end,
+// so sums may differ from the scalar loops in the
+// last bits. Tails shorter than a vector run in
+// the scalar loop.
+//
+// @author fschmidt
+//
+enum VectorKernels {
+    ;
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    static double dot(double[] a, double[] b, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int s = from;
+        for (int bound = from + SPECIES.loopBound(to - from); s < bound; s += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, s);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, s);
+            sum = va.fma(vb, sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + ScalarKernels.dot(a, b, s, to);
+    }
+
+    static double[] moments(double[] xs, double[] ys) {
+        DoubleVector sx = DoubleVector.zero(SPECIES);
+        DoubleVector sy = DoubleVector.zero(SPECIES);
+        DoubleVector sxx = DoubleVector.zero(SPECIES);
+        DoubleVector syy = DoubleVector.zero(SPECIES);
+        DoubleVector sxy = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(xs.length); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+            sx = sx.add(x);
+            sy = sy.add(y);
+            sxx = x.fma(x, sxx);
+            syy = y.fma(y, syy);
+            sxy = x.fma(y, sxy);
+        }
+        double[] moments = {
+                sx.reduceLanes(VectorOperators.ADD),
+                sy.reduceLanes(VectorOperators.ADD),
+                sxx.reduceLanes(VectorOperators.ADD),
+                syy.reduceLanes(VectorOperators.ADD),
+                sxy.reduceLanes(VectorOperators.ADD)
+        };
+        for (; i < xs.length; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            moments[0] += x;
+            moments[1] += y;
+            moments[2] += x * x;
+            moments[3] += y * y;
+            moments[4] += x * y;
+        }
+        return moments;
+    }
+
+    static double absoluteDifferenceSum(double[] a, double[] b) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            sum = sum.add(va.sub(vb).abs());
+        }
+        double dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            dist += Math.abs(a[i] - b[i]);
+        }
+        return dist;
+    }
+
+    static double squaredDifferenceSum(double[] a, double[] b) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+            DoubleVector diff = DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i));
+            sum = diff.fma(diff, sum);
+        }
+        double dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            double diff = a[i] - b[i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    static double sqrtProductSum(double[] a, double[] b) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            sum = sum.add(va.mul(vb).sqrt());
+        }
+        double total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            total += Math.sqrt(a[i] * b[i]);
+        }
+        return total;
+    }
+
+    static double relativeEntropy(double[] a, double[] b) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            VectorMask<Double> defined = va.compare(VectorOperators.NE, 0.0).and(vb.compare(VectorOperators.NE, 0.0));
+            DoubleVector terms = va.mul(va.div(vb).lanewise(VectorOperators.LOG));
+            sum = sum.add(terms, defined);
+        }
+        double divergence = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            if (a[i] != 0 && b[i] != 0) {
+                divergence += a[i] * Math.log(a[i] / b[i]);
+            }
+        }
+        return divergence;
+    }
+}
@@ -0,0 +1,367 @@
+import fschmidt.feature.selection.Datasets;
+import fschmidt.feature.selection.FeatureRankers;
+import fschmidt.feature.selection.correlation.CorrelationAlgorithm;
+import fschmidt.feature.selection.correlation.CorrelationClusters;
+import fschmidt.feature.selection.correlation.CorrelationMatrices;
+import fschmidt.feature.selection.correlation.CorrelationMatrix;
+import fschmidt.feature.selection.correlation.CorrelationMetricReduction;
+import fschmidt.feature.selection.correlation.IncrementalCorrelationReduction;
+import fschmidt.feature.selection.graph.CliqueEngines;
+import fschmidt.feature.selection.graph.UndirectedGraph;
+import fschmidt.feature.selection.graph.WeightedEdge;
+import fschmidt.feature.selection.graph.WeightedVertex;
+import fschmidt.feature.selection.ranking.FeatureSelectionBinTargetRanking;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static fschmidt.feature.selection.Datasets.*;
+import static fschmidt.feature.selection.Utils.Text.boldCyan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ----------------------------------------------
+//  CLIQUE BENCHMARK.
+// ----------------------------------------------
+// Compares the clique engines on the correlation
+// graphs of our datasets for several thresholds.
+// As in the graph selector, only the best ranked
+// features become vertices. Every engine is
+// validated against our own CliqueAlgorithm: the
+// maximum cliques have to be identical, otherwise
+// the selection would differ. Collapsing exact
+// or noisy copies must not change the selection
+// either, also along a chain of the single
+// linkage. The incrementally patched
+// cliques have to match a full search, every
+// point of a threshold sweep a separate run at
+// that threshold.
+public class CliqueBenchmark {
+
+    private static final int NUMBER_OF_RUNS = 5;
+    private static final double MAX_FEATURES = 16.0;
+    private static final double[] THRESHOLDS = {0.3, 0.5, 0.7, 0.9};
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Clique Engines on all Datasets")
+    void cliqueEnginesOnAllDatasets() {
+        var datasetCol = StringColumn.create("Dataset");
+        var thresholdCol = DoubleColumn.create("Threshold");
+        var edgesCol = IntColumn.create("Edges");
+        var engineCol = StringColumn.create("Engine");
+        var cliquesCol = IntColumn.create("Cliques");
+        var meanTimeCol = DoubleColumn.create("Mean-Time-ms");
+
+        for (Datasets dataset : List.of(GLASS, WINE, IO_SPHERE, SHUTTLE)) {
+            for (double threshold : THRESHOLDS) {
+                UndirectedGraph graph = correlationGraph(dataset.get(), threshold);
+                Set<Set<WeightedVertex>> expected = maximumCliques(CliqueEngines.BRON_KERBOSCH_PIVOTING.cliques(graph));
+
+                for (CliqueEngines engine : CliqueEngines.values()) {
+                    Set<Set<WeightedVertex>> cliques = engine.cliques(graph); // warm up
+                    assertEquals(expected, maximumCliques(cliques), engine + " on " + dataset);
+
+                    long time = 0;
+                    for (int i = 0; i < NUMBER_OF_RUNS; i++) {
+                        long t1 = System.nanoTime();
+                        engine.cliques(graph);
+                        time += System.nanoTime() - t1;
+                    }
+                    datasetCol.append(dataset.get().name());
+                    thresholdCol.append(threshold);
+                    edgesCol.append(graph.getNumberOfEdges());
+                    engineCol.append(engine.name());
+                    cliquesCol.append(cliques.size());
+                    meanTimeCol.append(Math.round(time / 1e6 / NUMBER_OF_RUNS * 1000.0) / 1000.0);
+                }
+            }
+        }
+
+        System.out.println(Table.create(boldCyan("Clique Engines"),
+                datasetCol, thresholdCol, edgesCol, engineCol, cliquesCol, meanTimeCol).printAll());
+    }
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Near-Duplicate Collapsing on all Datasets")
+    void nearDuplicateCollapsingOnAllDatasets() {
+        for (Datasets dataset : List.of(GLASS, WINE, IO_SPHERE, SHUTTLE)) {
+            // exact affine copies and noisy ones with 0.99 < |r| < 1
+            nearDuplicateCollapsing(dataset.get(), 0.0);
+            nearDuplicateCollapsing(dataset.get(), 0.05);
+        }
+    }
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Near-Duplicate Chaining")
+    void nearDuplicateChaining() {
+        // A ~ B ~ C with |r| > 0.99 along the chain, but not between A and C; D is independent
+        int n = 5000;
+        var random = new Random(42L);
+        double[] a = new double[n];
+        double[] b = new double[n];
+        double[] c = new double[n];
+        double[] d = new double[n];
+        for (int s = 0; s < n; s++) {
+            double drift = 0.1 * random.nextGaussian();
+            a[s] = random.nextGaussian();
+            b[s] = a[s] + drift;
+            c[s] = b[s] + drift;
+            d[s] = random.nextGaussian();
+        }
+        String[] names = {"A", "B", "C", "D"};
+        var matrix = CorrelationMatrices.pearson(names, new double[][]{a, b, c, d});
+        assertTrue(Math.abs(matrix.get("A", "B")) > 0.99, "A <-> B: " + matrix.get("A", "B"));
+        assertTrue(Math.abs(matrix.get("B", "C")) > 0.99, "B <-> C: " + matrix.get("B", "C"));
+        assertTrue(Math.abs(matrix.get("A", "C")) < 0.99, "A <-> C: " + matrix.get("A", "C"));
+        Map<String, Double> rankings = new LinkedHashMap<>();
+        rankings.put("A", 0.5);
+        rankings.put("B", 0.4);
+        rankings.put("C", 0.3);
+        rankings.put("D", 0.2);
+
+        // single linkage: C joins A through B
+        var clusters = CorrelationClusters.of(matrix, rankings, 0.99);
+        assertEquals(2, clusters.getNumberOfClusters());
+        assertEquals(Set.of("A", "B", "C"), new HashSet<>(clusters.getMembers("A")));
+        assertEquals("A", clusters.getRepresentative("C"));
+        assertEquals("D", clusters.getRepresentative("D"));
+
+        // cut at 0.9 the chain is pairwise non-adjacent anyway, so the selection stays the same
+        var full = new CorrelationMetricReduction(CorrelationAlgorithm.Pearson, 0.9, CliqueEngines.JGRAPHT_PIVOT)
+                .run(rankings, matrix);
+        var collapsed = new CorrelationMetricReduction(CorrelationAlgorithm.Pearson, 0.9, CliqueEngines.JGRAPHT_PIVOT)
+                .collapseNearDuplicates(0.99).run(rankings, matrix);
+        assertEquals(Set.of("A", "D"), new HashSet<>(full.get(0).getFirst()));
+        assertEquals(new HashSet<>(full.get(0).getFirst()), new HashSet<>(collapsed.get(0).getFirst()));
+    }
+
+    // every ranked feature gets a worse ranked copy, 2 x + 1 plus noise relative to the spread of x
+    private static void nearDuplicateCollapsing(Datasets.Dataset dataset, double noise) {
+        var rankings = new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), MAX_FEATURES, true)
+                .run(dataset);
+        var header = dataset.header();
+        var values = dataset.values();
+        var random = new Random(42L);
+        String at = dataset.name() + " with noise " + noise;
+        Map<String, Double> duplicatedRankings = new LinkedHashMap<>();
+        Map<String, double[]> columns = new LinkedHashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            Double ranking = rankings.get(header[i]);
+            if (ranking == null || Double.isNaN(ranking)) continue;
+            double[] column = new double[values.size()];
+            for (int s = 0; s < values.size(); s++) {
+                column[s] = values.get(s)[i];
+            }
+            double spread = new StandardDeviation().evaluate(column);
+            double[] copy = new double[values.size()];
+            for (int s = 0; s < values.size(); s++) {
+                copy[s] = 2.0 * (column[s] + noise * spread * random.nextGaussian()) + 1.0;
+            }
+            duplicatedRankings.put(header[i], ranking);
+            duplicatedRankings.put(header[i] + "'", ranking / 2.0);
+            columns.put(header[i], column);
+            columns.put(header[i] + "'", copy);
+        }
+        String[] names = columns.keySet().toArray(new String[0]);
+        var matrix = CorrelationMatrices.pearson(names, columns.values().toArray(new double[0][]));
+        if (noise > 0.0) {
+            for (String name : duplicatedRankings.keySet()) {
+                if (name.endsWith("'")) continue;
+                double r = Math.abs(matrix.get(name, name + "'"));
+                assertTrue(r > 0.99 && r < 1.0, name + " on " + at + ": " + r);
+            }
+        }
+
+        var full = new CorrelationMetricReduction(CorrelationAlgorithm.Pearson, 0.9, CliqueEngines.JGRAPHT_PIVOT)
+                .run(duplicatedRankings, matrix);
+        var reduction = new CorrelationMetricReduction(CorrelationAlgorithm.Pearson, 0.9, CliqueEngines.JGRAPHT_PIVOT)
+                .collapseNearDuplicates(0.99);
+        var collapsed = reduction.run(duplicatedRankings, matrix);
+
+        CorrelationClusters clusters = reduction.getClusters();
+        int collapsedCopies = 0;
+        for (String name : rankings.keySet()) {
+            if (Double.isNaN(rankings.get(name))) continue;
+            // the worse ranked copy is never the representative; it stays alone if rounding or noise puts one of its
+            // correlations on the other side of the cut
+            assertTrue(!clusters.getRepresentative(name).endsWith("'"), name + " on " + at);
+            String representative = clusters.getRepresentative(name + "'");
+            if (representative.equals(clusters.getRepresentative(name))) {
+                assertTrue(clusters.getMembers(representative).contains(name + "'"), name + " on " + at);
+                collapsedCopies++;
+            } else {
+                assertEquals(name + "'", representative, name + " on " + at);
+            }
+        }
+        assertTrue(collapsedCopies > 0, at);
+        assertTrue(clusters.getNumberOfClusters() <= clusters.getNumberOfFeatures() - collapsedCopies, at);
+        assertEquals(new HashSet<>(full.get(0).getFirst()), new HashSet<>(collapsed.get(0).getFirst()), at);
+    }
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Incremental Cliques on all Datasets")
+    void incrementalCliquesOnAllDatasets() {
+        for (Datasets dataset : List.of(GLASS, WINE, IO_SPHERE, SHUTTLE)) {
+            var header = dataset.get().header();
+            double[][] columns = CorrelationMatrices.columns(dataset.get().values(), IntStream.range(0, header.length).toArray());
+            CorrelationMatrix matrix = CorrelationMatrices.pearson(header, columns);
+            for (double threshold : THRESHOLDS) {
+                var reduction = new IncrementalCorrelationReduction(dataset.get().groundTruth(), FeatureRankers.KS.newInstance(),
+                        threshold, 0.1, CliqueEngines.JGRAPHT_PIVOT);
+                for (int i = 0; i < header.length; i++) {
+                    reduction.addFeature(header[i], columns[i]);
+                }
+                assertEquals(names(CliqueEngines.JGRAPHT_PIVOT.cliques(reduction.getGraph())), names(reduction.getCliques()),
+                        "added on " + dataset + " at " + threshold);
+                // retire every third feature, then bring them back in reverse order
+                for (int i = 0; i < header.length; i += 3) {
+                    reduction.removeFeature(header[i]);
+                }
+                assertEquals(names(CliqueEngines.JGRAPHT_PIVOT.cliques(reduction.getGraph())), names(reduction.getCliques()),
+                        "removed on " + dataset + " at " + threshold);
+                for (int i = (header.length - 1) / 3 * 3; i >= 0; i -= 3) {
+                    reduction.addFeature(header[i], columns[i]);
+                }
+                assertEquals(names(CliqueEngines.JGRAPHT_PIVOT.cliques(reduction.getGraph())), names(reduction.getCliques()),
+                        "re-added on " + dataset + " at " + threshold);
+                // the correlations live in the weight column of the graph, not on the edges
+                for (WeightedEdge edge : reduction.getGraph().getEdges()) {
+                    String pair = edge.getVertex1().getName() + " <-> " + edge.getVertex2().getName() + " on " + dataset;
+                    assertEquals(matrix.get(edge.getVertex1().getName(), edge.getVertex2().getName()),
+                            reduction.getGraph().getWeight(edge, "pearson"), 1e-9, pair);
+                    assertTrue(edge.getProperties().isEmpty(), pair);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Threshold Sweep on all Datasets")
+    void thresholdSweepOnAllDatasets() {
+        // unsorted, with a duplicate
+        double[] thresholds = {0.7, 0.3, 0.9, 0.5, 0.7};
+        double[] sorted = {0.3, 0.5, 0.7, 0.7, 0.9};
+        for (Datasets dataset : List.of(GLASS, WINE, IO_SPHERE, SHUTTLE)) {
+            var rankings = new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), MAX_FEATURES, true)
+                    .run(dataset.get());
+            var header = dataset.get().header();
+            var matrix = CorrelationMatrices.pearson(header,
+                    CorrelationMatrices.columns(dataset.get().values(), IntStream.range(0, header.length).toArray()));
+
+            var curve = new CorrelationMetricReduction(CorrelationAlgorithm.Pearson, 0.9, CliqueEngines.JGRAPHT_PIVOT)
+                    .sweep(rankings, matrix, thresholds);
+            assertEquals(sorted.length, curve.size(), dataset.toString());
+            for (int t = 0; t < sorted.length; t++) {
+                var point = curve.get(t);
+                String at = dataset + " at " + sorted[t];
+                assertEquals(sorted[t], point.getThreshold(), at);
+
+                List<String> features = new CorrelationMetricReduction(fixedThreshold(sorted[t]), 0.9, CliqueEngines.JGRAPHT_PIVOT)
+                        .run(rankings, matrix).get(0).getFirst();
+                assertEquals(new HashSet<>(features), new HashSet<>(point.getFeatures()), at);
+                assertEquals(features.size(), point.getCliqueSize(), at);
+                assertEquals(score(features, rankings, matrix), point.getScore(), 1e-12, at);
+            }
+        }
+    }
+
+    private static Set<Set<String>> names(Set<Set<WeightedVertex>> cliques) {
+        Set<Set<String>> names = new HashSet<>();
+        for (Set<WeightedVertex> clique : cliques) {
+            Set<String> members = new HashSet<>();
+            for (WeightedVertex v : clique) {
+                members.add(v.getName());
+            }
+            names.add(members);
+        }
+        return names;
+    }
+
+    // Pearson, but the reduction cuts the graph at exactly this threshold like the sweep
+    private static CorrelationAlgorithm.ThresholdedCorrelation fixedThreshold(double threshold) {
+        return new CorrelationAlgorithm.ThresholdedCorrelation() {
+            public double correlation(double[] x, double[] y) {
+                return CorrelationAlgorithm.Pearson.correlation(x, y);
+            }
+
+            public double threshold() {
+                return threshold;
+            }
+
+            public String toString() {
+                return "pearsonAt(" + threshold + ")";
+            }
+        };
+    }
+
+    // 1 - mean |r| within the clique + mean ranking, as the selection scores cliques (no clique scores Double.MIN_VALUE)
+    private static double score(List<String> features, Map<String, Double> rankings, CorrelationMatrix matrix) {
+        if (features.size() < 2) {
+            return Double.MIN_VALUE;
+        }
+        double correlation = 0.0;
+        double ranking = 0.0;
+        for (int a = 0; a < features.size(); a++) {
+            ranking += rankings.get(features.get(a));
+            for (int b = a + 1; b < features.size(); b++) {
+                correlation += Math.abs(matrix.get(features.get(a), features.get(b)));
+            }
+        }
+        int pairs = features.size() * (features.size() - 1) / 2;
+        return 1.0 - correlation / pairs + ranking / features.size();
+    }
+
+    // Pearson correlation graph of the best ranked features keeping all edges with |r| <= threshold
+    private static UndirectedGraph correlationGraph(Datasets.Dataset dataset, double threshold) {
+        var header = dataset.header();
+        var values = dataset.values();
+        var rankings = new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), MAX_FEATURES, true)
+                .run(dataset);
+        var graph = new UndirectedGraph();
+        for (String name : rankings.keySet()) {
+            graph.addVertex(new WeightedVertex(name));
+        }
+        for (int i = 0; i < header.length; i++) {
+            for (int j = i + 1; j < header.length; j++) {
+                if (!graph.containsVertex(header[i]) || !graph.containsVertex(header[j])) continue;
+                double[] x = new double[values.size()];
+                double[] y = new double[values.size()];
+                for (int s = 0; s < values.size(); s++) {
+                    x[s] = values.get(s)[i];
+                    y[s] = values.get(s)[j];
+                }
+                WeightedEdge e = graph.addEdge(graph.getVertex(header[i]), graph.getVertex(header[j]));
+                e.addProperty("pearson", CorrelationAlgorithm.Pearson.correlation(x, y));
+            }
+        }
+        graph.removeWeightedEdges("pearson", threshold);
+        return graph;
+    }
+
+    private static Set<Set<WeightedVertex>> maximumCliques(Set<Set<WeightedVertex>> cliques) {
+        int biggestSize = cliques.stream().mapToInt(Set::size).max().orElse(0);
+        Set<Set<WeightedVertex>> maximum = new HashSet<>();
+        for (Set<WeightedVertex> clique : cliques) {
+            if (clique.size() == biggestSize && biggestSize > 0) maximum.add(clique);
+        }
+        return maximum;
+    }
+}
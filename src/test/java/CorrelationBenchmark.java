@@ -0,0 +1,733 @@
+import fschmidt.feature.selection.Datasets;
+import fschmidt.feature.selection.FeatureRankers;
+import fschmidt.feature.selection.ranking.DecayedClassHistograms;
+import fschmidt.feature.selection.ranking.Distances;
+import fschmidt.feature.selection.ranking.FeatureSelectionBinTargetRanking;
+import fschmidt.feature.selection.correlation.BoundedCorrelation;
+import fschmidt.feature.selection.correlation.CoMomentAccumulator;
+import fschmidt.feature.selection.correlation.ColumnStore;
+import fschmidt.feature.selection.correlation.CorrelationAlgorithm;
+import fschmidt.feature.selection.correlation.CorrelationCache;
+import fschmidt.feature.selection.correlation.CorrelationMatrices;
+import fschmidt.feature.selection.correlation.CorrelationMatrix;
+import fschmidt.feature.selection.correlation.CorrelationMetricReduction;
+import fschmidt.feature.selection.correlation.DecayedCoMomentAccumulator;
+import fschmidt.feature.selection.correlation.LaggedCorrelation;
+import fschmidt.feature.selection.correlation.MutualInformationCorrelation;
+import fschmidt.feature.selection.correlation.SampledCorrelation;
+import fschmidt.feature.selection.correlation.SimHashCorrelation;
+import fschmidt.feature.selection.correlation.SketchedCorrelation;
+import fschmidt.feature.selection.graph.CliqueEngines;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static fschmidt.feature.selection.Utils.Text.boldCyan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ----------------------------------------------
+//  CORRELATION BENCHMARK.
+// ----------------------------------------------
+// Compares the batch correlation matrices with the
+// pair by pair commons-math implementations on all
+// datasets. Every entry has to agree up to rounding
+// (NaN for constant features on both sides), also
+// if all of them are computed in one shared pass. The
+// streaming accumulators and the out-of-core
+// kernel have to reproduce the batch Pearson
+// matrix, also when merged respectively chunked,
+// the decayed accumulators the weighted batch
+// statistics, the FFT lags a brute force lag scan,
+// the fast distance correlation the O(n^2) one,
+// the bounded kernel at least on the surviving
+// side of the threshold, SimHash on its candidates,
+// the row samples and sketches on their exact
+// pairs and their estimates on the edge decisions.
+// Cached matrices have to come back bit for bit,
+// in their precision, after a hit.
+public class CorrelationBenchmark {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Correlation Matrices on all Datasets")
+    void correlationMatricesOnAllDatasets() {
+        var datasetCol = StringColumn.create("Dataset");
+        var featuresCol = IntColumn.create("Features");
+        var samplesCol = IntColumn.create("Samples");
+        var correlationCol = StringColumn.create("Correlation");
+        var matrixTimeCol = DoubleColumn.create("Matrix-Time-ms");
+        var pairwiseTimeCol = DoubleColumn.create("Pairwise-Time-ms");
+
+        CorrelationAlgorithm.Correlation[] correlations = {
+                CorrelationAlgorithm.Pearson,
+                CorrelationAlgorithm.SimplePearson,
+                CorrelationAlgorithm.Spearmans,
+                CorrelationAlgorithm.Kendalls,
+                CorrelationAlgorithm.MutualInformation
+        };
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+            var separate = new HashMap<String, CorrelationMatrix>();
+            long separateTime = 0;
+
+            for (CorrelationAlgorithm.Correlation correlation : correlations) {
+                long t1 = System.nanoTime();
+                CorrelationMatrix matrix = correlation.matrix(header, columns);
+                long t2 = System.nanoTime();
+                CorrelationMatrix expected = CorrelationMatrices.pairwise(correlation, header, columns);
+                long t3 = System.nanoTime();
+
+                for (int i = 0; i < header.length; i++) {
+                    for (int j = i + 1; j < header.length; j++) {
+                        String pair = correlation + " " + header[i] + " <-> " + header[j] + " on " + dataset.name();
+                        if (Double.isNaN(expected.get(i, j))) {
+                            assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                        } else {
+                            assertEquals(expected.get(i, j), matrix.get(i, j), TOLERANCE, pair);
+                        }
+                    }
+                }
+                datasetCol.append(dataset.name());
+                featuresCol.append(header.length);
+                samplesCol.append(dataset.values().size());
+                correlationCol.append(correlation.toString());
+                matrixTimeCol.append(Math.round((t2 - t1) / 1e3) / 1e3);
+                pairwiseTimeCol.append(Math.round((t3 - t2) / 1e3) / 1e3);
+                separate.put(correlation.toString(), matrix);
+                separateTime += t2 - t1;
+            }
+
+            // all correlations in one pass have to give the very same matrices
+            long t1 = System.nanoTime();
+            Map<String, CorrelationMatrix> shared = new CorrelationAlgorithm(correlations).matrices(header, columns);
+            long t2 = System.nanoTime();
+            assertEquals(separate.keySet(), shared.keySet());
+            for (String correlation : shared.keySet()) {
+                for (int i = 0; i < header.length; i++) {
+                    for (int j = i + 1; j < header.length; j++) {
+                        assertEquals(separate.get(correlation).get(i, j), shared.get(correlation).get(i, j), TOLERANCE,
+                                correlation + " " + header[i] + " <-> " + header[j] + " on " + dataset.name());
+                    }
+                }
+            }
+
+            // the packed float32 store only loses float precision
+            CorrelationMatrix float32 = CorrelationMatrices.pearson(header, columns, CorrelationMatrix.Precision.FLOAT32);
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    double expected = separate.get(CorrelationAlgorithm.Pearson.toString()).get(i, j);
+                    if (Double.isNaN(expected)) {
+                        assertTrue(Double.isNaN(float32.get(i, j)));
+                    } else {
+                        assertEquals(expected, float32.get(i, j), 1e-6, "float32 " + header[i] + " <-> " + header[j]);
+                    }
+                }
+            }
+            System.out.println(String.format("%s: all correlations separately %s ms, shared %s ms", dataset.name(),
+                    Math.round(separateTime / 1e3) / 1e3, Math.round((t2 - t1) / 1e3) / 1e3));
+        }
+
+        System.out.println(Table.create(boldCyan("Correlation Matrices"),
+                datasetCol, featuresCol, samplesCol, correlationCol, matrixTimeCol, pairwiseTimeCol).printAll());
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Streaming Co-Moments on all Datasets")
+    void streamingCoMomentsOnAllDatasets() {
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            var values = dataset.values();
+            CorrelationMatrix expected = CorrelationMatrices.pearson(header,
+                    CorrelationMatrices.columns(values, IntStream.range(0, header.length).toArray()));
+
+            // one accumulator per shard, merged at the end
+            var shards = new CoMomentAccumulator[]{new CoMomentAccumulator(header), new CoMomentAccumulator(header)};
+            for (int s = 0; s < values.size(); s++) {
+                shards[s % 3 == 0 ? 0 : 1].add(values.get(s));
+            }
+            CorrelationMatrix matrix = shards[0].merge(shards[1]).pearson();
+
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                    if (Double.isNaN(expected.get(i, j))) {
+                        assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                    } else {
+                        assertEquals(expected.get(i, j), matrix.get(i, j), TOLERANCE, pair);
+                    }
+                }
+            }
+            System.out.println(shards[0] + " on " + dataset.name());
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Decayed Co-Moments and Histograms on all Datasets")
+    void decayedStatisticsOnAllDatasets() {
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            var values = dataset.values();
+            int n = values.size();
+            double halfLife = n / 4.0;
+
+            // row s has weight 2^(-(n - 1 - s) / halfLife), two shards with explicit times, merged at the end
+            var shards = new DecayedCoMomentAccumulator[]{
+                    new DecayedCoMomentAccumulator(header, halfLife), new DecayedCoMomentAccumulator(header, halfLife)};
+            for (int s = 0; s < n; s++) {
+                shards[s % 3 == 0 ? 0 : 1].add(values.get(s), s);
+            }
+            CorrelationMatrix matrix = shards[0].merge(shards[1]).pearson();
+
+            double[] weights = new double[n];
+            for (int s = 0; s < n; s++) {
+                weights[s] = Math.pow(2.0, -(n - 1 - s) / halfLife);
+            }
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                    double expected = weightedPearson(values, weights, i, j);
+                    if (Double.isNaN(expected)) {
+                        assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                    } else {
+                        assertEquals(expected, matrix.get(i, j), 1e-6, pair);
+                    }
+                }
+            }
+
+            // without decay the histogram KS approaches the exact KS from below
+            var histograms = DecayedClassHistograms.of(header, values, 4096, Double.POSITIVE_INFINITY);
+            var ground = dataset.groundTruth();
+            for (int s = 0; s < n; s++) {
+                histograms.update(ground.getBoolean(s), values.get(s));
+            }
+            var distances = histograms.kolmogorovSmirnov();
+            var ks = new Distances.KolmogorovSmirnovDistance();
+            for (int i = 0; i < header.length; i++) {
+                final int column = i;
+                double[] positives = IntStream.range(0, n).filter(ground::getBoolean).mapToDouble(s -> values.get(s)[column]).toArray();
+                double[] negatives = IntStream.range(0, n).filter(s -> !ground.getBoolean(s)).mapToDouble(s -> values.get(s)[column]).toArray();
+                double exact = ks.getDistance(positives, negatives);
+                double binned = distances.get(header[i]);
+                assertTrue(binned <= exact + 1e-9 && binned >= exact - 0.05, header[i] + " on " + dataset.name());
+            }
+            // the histograms only know the KS distance, another ranker would silently be replaced by it
+            assertEquals(distances.size(), new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), 0.0, false)
+                    .run(histograms).size(), dataset.name());
+            assertThrows(IllegalArgumentException.class, () -> new FeatureSelectionBinTargetRanking(
+                    FeatureRankers.EUCLIDEAN.newInstance(), 0.0, false).run(histograms), dataset.name());
+            System.out.println(shards[0] + " on " + dataset.name());
+        }
+    }
+
+    private static double weightedPearson(List<double[]> values, double[] weights, int i, int j) {
+        double total = 0.0;
+        double meanI = 0.0;
+        double meanJ = 0.0;
+        for (int s = 0; s < values.size(); s++) {
+            total += weights[s];
+            meanI += weights[s] * values.get(s)[i];
+            meanJ += weights[s] * values.get(s)[j];
+        }
+        meanI /= total;
+        meanJ /= total;
+        double sij = 0.0;
+        double sii = 0.0;
+        double sjj = 0.0;
+        for (int s = 0; s < values.size(); s++) {
+            double di = values.get(s)[i] - meanI;
+            double dj = values.get(s)[j] - meanJ;
+            sij += weights[s] * di * dj;
+            sii += weights[s] * di * di;
+            sjj += weights[s] * dj * dj;
+        }
+        return sij / Math.sqrt(sii * sjj);
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Lagged Cross-Correlation on all Datasets")
+    void laggedCrossCorrelationOnAllDatasets() {
+        int maxLag = 8;
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+            double[][] z = CorrelationMatrices.standardise(columns);
+            int n = dataset.values().size();
+
+            LaggedCorrelation.Matrix matrix = new LaggedCorrelation(maxLag).matrix(header, columns);
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                    if (Double.isNaN(z[i][0]) || Double.isNaN(z[j][0])) {
+                        assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                        continue;
+                    }
+                    // brute force: every lag in O(n)
+                    double best = 0.0;
+                    for (int k = -maxLag; k <= maxLag; k++) {
+                        double r = 0.0;
+                        for (int t = Math.max(0, -k); t < Math.min(n, n - k); t++) {
+                            r += z[i][t] * z[j][t + k];
+                        }
+                        best = Math.max(best, Math.abs(r));
+                    }
+                    assertEquals(best, Math.abs(matrix.get(i, j)), TOLERANCE, pair);
+                    int lag = matrix.getLag(i, j);
+                    assertEquals(-lag, matrix.getLag(j, i), pair);
+                    double atLag = 0.0;
+                    for (int t = Math.max(0, -lag); t < Math.min(n, n - lag); t++) {
+                        atLag += z[i][t] * z[j][t + lag];
+                    }
+                    assertEquals(atLag, matrix.get(i, j), TOLERANCE, pair);
+                }
+            }
+            System.out.println(matrix + " on " + dataset.name());
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Distance Correlation on all Datasets")
+    void distanceCorrelationOnAllDatasets() {
+        // the naive O(n^2) reference only on a prefix of the rows
+        int maxSamples = 2000;
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            var values = dataset.values();
+            var prefix = values.subList(0, Math.min(maxSamples, values.size()));
+            double[][] columns = CorrelationMatrices.columns(prefix, IntStream.range(0, header.length).toArray());
+
+            CorrelationMatrix matrix = CorrelationAlgorithm.Distance.matrix(header, columns);
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                    double expected = naiveDistanceCorrelation(columns[i], columns[j]);
+                    if (Double.isNaN(expected)) {
+                        assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                    } else {
+                        assertEquals(expected, matrix.get(i, j), 1e-6, pair);
+                    }
+                }
+            }
+
+            double[][] all = CorrelationMatrices.columns(values, IntStream.range(0, header.length).toArray());
+            long t1 = System.nanoTime();
+            CorrelationAlgorithm.Distance.matrix(header, all);
+            System.out.println(String.format("Distance correlation of %s rows on %s: %.1f ms", values.size(), dataset.name(),
+                    (System.nanoTime() - t1) / 1e6));
+        }
+    }
+
+    // double centred distance matrices, O(n^2)
+    private static double naiveDistanceCorrelation(double[] x, double[] y) {
+        double[][] a = centredDistances(x);
+        double[][] b = centredDistances(y);
+        double ab = 0.0;
+        double aa = 0.0;
+        double bb = 0.0;
+        for (int s = 0; s < x.length; s++) {
+            for (int t = 0; t < x.length; t++) {
+                ab += a[s][t] * b[s][t];
+                aa += a[s][t] * a[s][t];
+                bb += b[s][t] * b[s][t];
+            }
+        }
+        if (aa == 0.0 || bb == 0.0) {
+            return Double.NaN;
+        }
+        return Math.sqrt(Math.max(0.0, ab / Math.sqrt(aa * bb)));
+    }
+
+    private static double[][] centredDistances(double[] x) {
+        int n = x.length;
+        double[][] a = new double[n][n];
+        double[] rowMeans = new double[n];
+        double mean = 0.0;
+        for (int s = 0; s < n; s++) {
+            for (int t = 0; t < n; t++) {
+                a[s][t] = Math.abs(x[s] - x[t]);
+                rowMeans[s] += a[s][t] / n;
+            }
+            mean += rowMeans[s] / n;
+        }
+        for (int s = 0; s < n; s++) {
+            for (int t = 0; t < n; t++) {
+                a[s][t] += mean - rowMeans[s] - rowMeans[t];
+            }
+        }
+        return a;
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Out-of-Core Pearson on all Datasets")
+    void outOfCorePearsonOnAllDatasets(@TempDir Path directory) throws IOException {
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            var values = dataset.values();
+            CorrelationMatrix expected = CorrelationMatrices.pearson(header,
+                    CorrelationMatrices.columns(values, IntStream.range(0, header.length).toArray()));
+
+            // small chunks, so that every dataset spans several of them
+            Path file = directory.resolve(dataset.name() + ".cols");
+            try (var writer = ColumnStore.create(file, header, 97)) {
+                for (double[] row : values) {
+                    writer.add(row);
+                }
+            }
+            CorrelationMatrix matrix;
+            CorrelationMatrix matrix32;
+            try (var store = ColumnStore.open(file)) {
+                matrix = CorrelationMatrices.pearson(store, directory.resolve(dataset.name() + ".cmx"));
+                matrix32 = CorrelationMatrices.pearson(store, directory.resolve(dataset.name() + ".32.cmx"),
+                        CorrelationMatrix.Precision.FLOAT32);
+                // the ranking column by column from the store is the ranking of the whole dataset
+                assertEquals(new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), 0.0, false).run(dataset),
+                        new FeatureSelectionBinTargetRanking(FeatureRankers.KS.newInstance(), 0.0, false)
+                                .run(store, dataset.groundTruth()), dataset.name());
+                System.out.println(store + " on " + dataset.name());
+            }
+
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                    if (Double.isNaN(expected.get(i, j))) {
+                        assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                        assertTrue(Double.isNaN(matrix32.get(i, j)), pair);
+                    } else {
+                        assertEquals(expected.get(i, j), matrix.get(i, j), TOLERANCE, pair);
+                        assertEquals((float) matrix.get(i, j), matrix32.get(i, j), 0.0, pair);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Sampled Correlations on all Datasets")
+    void sampledCorrelationsOnAllDatasets() {
+        int sampleSize = 1000;
+        CorrelationAlgorithm.Correlation[] correlations = {
+                CorrelationAlgorithm.Pearson,
+                CorrelationAlgorithm.Spearmans,
+                CorrelationAlgorithm.Kendalls
+        };
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+
+            for (CorrelationAlgorithm.Correlation correlation : correlations) {
+                CorrelationMatrix expected = correlation.matrix(header, columns);
+                for (double threshold : new double[]{0.1, 0.3, 0.5, 0.7}) {
+                    var sampled = new SampledCorrelation(correlation, sampleSize, threshold);
+                    SampledCorrelation.Matrix matrix = sampled.matrix(header, columns);
+                    for (int i = 0; i < header.length; i++) {
+                        for (int j = i + 1; j < header.length; j++) {
+                            String pair = sampled + " " + header[i] + " <-> " + header[j] + " on " + dataset.name();
+                            double r = expected.get(i, j);
+                            if (Double.isNaN(r)) {
+                                assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                            } else if (matrix.isExact(i, j)) {
+                                assertEquals(r, matrix.get(i, j), TOLERANCE, pair);
+                            } else {
+                                // with the fixed seed every estimate decides its edge like the exact value
+                                assertEquals(Math.abs(r) > threshold, Math.abs(matrix.get(i, j)) > threshold, pair);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Bounded Pearson on all Datasets")
+    void boundedPearsonOnAllDatasets() {
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+            CorrelationMatrix expected = CorrelationMatrices.pearson(header, columns);
+
+            for (double threshold : new double[]{0.3, 0.6, 0.9}) {
+                BoundedCorrelation.Matrix matrix = new BoundedCorrelation(threshold).matrix(header, columns);
+                for (int i = 0; i < header.length; i++) {
+                    for (int j = i + 1; j < header.length; j++) {
+                        String pair = header[i] + " <-> " + header[j] + " at " + threshold + " on " + dataset.name();
+                        double r = expected.get(i, j);
+                        if (Double.isNaN(r)) {
+                            assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                        } else if (Math.abs(r) <= threshold) {
+                            // surviving edges are exact
+                            assertTrue(matrix.isExact(i, j), pair);
+                            assertEquals(r, matrix.get(i, j), TOLERANCE, pair);
+                        } else {
+                            // deleted edges only have to stay on the right side of the threshold
+                            assertTrue(Math.abs(matrix.get(i, j)) > threshold && Math.signum(matrix.get(i, j)) == Math.signum(r), pair);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("SimHash Candidates on all Datasets")
+    void simHashCandidatesOnAllDatasets() {
+        for (double threshold : new double[]{0.5, 0.7, 0.9}) {
+            int correlated = 0;
+            int missed = 0;
+            for (long seed : new long[]{1L, 2L, 3L}) {
+                SimHashCorrelation simHash = new SimHashCorrelation(threshold, 0.99, seed);
+                assertTrue(simHash.recall(threshold) >= 0.99, simHash.toString());
+                for (Datasets datasets : Datasets.values()) {
+                    var dataset = datasets.get();
+                    String[] header = dataset.header();
+                    double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+                    CorrelationMatrix expected = CorrelationMatrices.pearson(header, columns);
+
+                    SimHashCorrelation.Matrix matrix = simHash.matrix(header, columns);
+                    for (int i = 0; i < header.length; i++) {
+                        for (int j = i + 1; j < header.length; j++) {
+                            String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                            double r = expected.get(i, j);
+                            if (Double.isNaN(r)) {
+                                assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                                continue;
+                            }
+                            if (matrix.isCandidate(i, j)) {
+                                assertEquals(r, matrix.get(i, j), TOLERANCE, pair);
+                            } else {
+                                assertEquals(0.0, matrix.get(i, j), pair);
+                            }
+                            if (Math.abs(r) > threshold) {
+                                correlated++;
+                                if (!matrix.isCandidate(i, j)) missed++;
+                            }
+                        }
+                    }
+                }
+            }
+            // every pair beyond the threshold is a candidate with probability >= 0.99, allow for the variance
+            System.out.println(String.format("SimHash at %s missed %s of %s correlated pairs.", threshold, missed, correlated));
+            assertTrue(missed <= 0.03 * correlated, "threshold " + threshold + ": missed " + missed + " of " + correlated);
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Sketched Pearson on all Datasets")
+    void sketchedPearsonOnAllDatasets() {
+        double threshold = 0.9;
+        double accuracy = 0.2;
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+            CorrelationMatrix expected = CorrelationMatrices.pearson(header, columns);
+
+            SketchedCorrelation.Matrix matrix = new SketchedCorrelation(threshold, accuracy, 0.99, 42L).matrix(header, columns);
+            for (int i = 0; i < header.length; i++) {
+                for (int j = i + 1; j < header.length; j++) {
+                    String pair = header[i] + " <-> " + header[j] + " on " + dataset.name();
+                    double r = expected.get(i, j);
+                    if (Double.isNaN(r)) {
+                        assertTrue(Double.isNaN(matrix.get(i, j)), pair);
+                    } else if (matrix.isExact(i, j)) {
+                        assertEquals(r, matrix.get(i, j), TOLERANCE, pair);
+                    } else {
+                        // estimates away from the threshold have to decide the edge like the exact value
+                        assertEquals(Math.abs(r) > threshold, Math.abs(matrix.get(i, j)) > threshold, pair);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Correlation Cache on all Datasets")
+    void correlationCacheOnAllDatasets(@TempDir Path directory) throws IOException {
+        CorrelationCache cache = new CorrelationCache(directory, 1L << 30);
+        long misses = 0;
+        for (Datasets datasets : Datasets.values()) {
+            var dataset = datasets.get();
+            String[] header = dataset.header();
+            double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+
+            for (CorrelationMatrix.Precision precision : CorrelationMatrix.Precision.values()) {
+                long hits = cache.getHits();
+                CorrelationMatrix computed = cache.matrix(CorrelationAlgorithm.Pearson, header, columns, precision);
+                assertEquals(++misses, cache.getMisses(), precision + " on " + dataset.name());
+                CorrelationMatrix cached = cache.matrix(CorrelationAlgorithm.Pearson, header, columns, precision);
+                assertEquals(hits + 1, cache.getHits(), precision + " on " + dataset.name());
+                assertEquals(precision, computed.getPrecision(), dataset.name());
+                assertEquals(precision, cached.getPrecision(), dataset.name());
+                for (int i = 0; i < header.length; i++) {
+                    for (int j = i + 1; j < header.length; j++) {
+                        assertEquals(computed.get(i, j), cached.get(i, j), 0.0, header[i] + " <-> " + header[j] + " on " + dataset.name());
+                    }
+                }
+            }
+
+            // estimates at a threshold and lags are computed, but neither stored nor counted
+            long entries = entries(directory);
+            long hits = cache.getHits();
+            cache.matrix(new SampledCorrelation(CorrelationAlgorithm.Pearson, 100, 0.5), header, columns);
+            cache.matrix(new LaggedCorrelation(2), header, columns);
+            assertEquals(entries, entries(directory), dataset.name());
+            assertEquals(hits, cache.getHits(), dataset.name());
+            assertEquals(misses, cache.getMisses(), dataset.name());
+        }
+        System.out.println(cache);
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Correlation Cache Eviction and Corrupt Entries")
+    void correlationCacheEvictionAndCorruptEntries(@TempDir Path directory) throws IOException {
+        var dataset = Datasets.GLASS.get();
+        String[] header = dataset.header();
+        double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+        CorrelationAlgorithm.Correlation a = CorrelationAlgorithm.Pearson;
+        CorrelationAlgorithm.Correlation b = CorrelationAlgorithm.Spearmans;
+        CorrelationAlgorithm.Correlation c = CorrelationAlgorithm.Kendalls;
+        Path fileA = directory.resolve(CorrelationCache.fingerprint(a, header, columns) + ".cmx");
+        Path fileB = directory.resolve(CorrelationCache.fingerprint(b, header, columns) + ".cmx");
+        Path fileC = directory.resolve(CorrelationCache.fingerprint(c, header, columns) + ".cmx");
+
+        // corrupt entry: dropped, recomputed and stored again
+        CorrelationCache cache = new CorrelationCache(directory, 1L << 30);
+        CorrelationMatrix expected = cache.matrix(a, header, columns);
+        long size = Files.size(fileA);
+        Files.write(fileA, "not a correlation matrix".getBytes(StandardCharsets.UTF_8));
+        CorrelationMatrix recomputed = cache.matrix(a, header, columns);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(size, Files.size(fileA));
+        for (int i = 0; i < header.length; i++) {
+            for (int j = i + 1; j < header.length; j++) {
+                assertEquals(expected.get(i, j), recomputed.get(i, j), 0.0, header[i] + " <-> " + header[j]);
+            }
+        }
+        cache.clear();
+        assertEquals(0, entries(directory));
+
+        // room for two entries: after A is hit, adding C evicts B, the least recently used one
+        cache = new CorrelationCache(directory, 2 * size + size / 2);
+        cache.matrix(a, header, columns);
+        cache.matrix(b, header, columns);
+        Files.setLastModifiedTime(fileA, FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(fileB, FileTime.fromMillis(2000));
+        cache.matrix(a, header, columns);
+        cache.matrix(c, header, columns);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertTrue(Files.exists(fileA));
+        assertTrue(!Files.exists(fileB));
+        assertTrue(Files.exists(fileC));
+        assertEquals(2, entries(directory));
+        System.out.println(cache);
+    }
+
+    @Test
+    @Tag("Correlation")
+    @DisplayName("Correlation Identities")
+    void correlationIdentities() {
+        var dataset = Datasets.GLASS.get();
+        String[] header = dataset.header();
+        double[][] columns = CorrelationMatrices.columns(dataset.values(), IntStream.range(0, header.length).toArray());
+        // the name keys the matrices in the reduction, the cache and the edge weights: every method and every
+        // parameter that changes the values needs its own, equal parameters the same one
+        CorrelationAlgorithm.Correlation[] correlations = correlationVariants();
+        CorrelationAlgorithm.Correlation[] copies = correlationVariants();
+        for (int a = 0; a < correlations.length; a++) {
+            String name = correlations[a].toString();
+            assertEquals(name, copies[a].toString());
+            assertEquals(CorrelationCache.fingerprint(correlations[a], header, columns),
+                    CorrelationCache.fingerprint(copies[a], header, columns), name);
+            for (int b = a + 1; b < correlations.length; b++) {
+                assertNotEquals(name, correlations[b].toString());
+                assertNotEquals(CorrelationCache.fingerprint(correlations[a], header, columns),
+                        CorrelationCache.fingerprint(correlations[b], header, columns), name + " / " + correlations[b]);
+            }
+        }
+
+        // withKey keeps the key and every distinct method once, copies are dropped
+        CorrelationAlgorithm.Correlation[] additional = new CorrelationAlgorithm.Correlation[2 * correlations.length];
+        System.arraycopy(copies, 0, additional, 0, copies.length);
+        System.arraycopy(correlations, 0, additional, copies.length, correlations.length);
+        var reduction = new CorrelationMetricReduction(CorrelationAlgorithm.Pearson, 0.5, CliqueEngines.JGRAPHT_PIVOT, null, additional);
+        assertEquals(correlations.length, reduction.getCorrelations().length);
+        for (int a = 0; a < correlations.length; a++) {
+            assertEquals(correlations[a].toString(), reduction.getCorrelations()[a].toString());
+        }
+    }
+
+    // Pearson first, then every type in variants that differ in one parameter
+    private static CorrelationAlgorithm.Correlation[] correlationVariants() {
+        return new CorrelationAlgorithm.Correlation[]{
+                CorrelationAlgorithm.Pearson,
+                CorrelationAlgorithm.SimplePearson,
+                CorrelationAlgorithm.Spearmans,
+                CorrelationAlgorithm.Kendalls,
+                CorrelationAlgorithm.MutualInformation,
+                new MutualInformationCorrelation(8),
+                CorrelationAlgorithm.Distance,
+                new LaggedCorrelation(8),
+                new LaggedCorrelation(0),
+                new SampledCorrelation(CorrelationAlgorithm.Pearson, 1000, 0.5),
+                new SampledCorrelation(CorrelationAlgorithm.Pearson, 1000, 0.7),
+                new SampledCorrelation(CorrelationAlgorithm.Pearson, 500, 0.5),
+                new SampledCorrelation(CorrelationAlgorithm.Spearmans, 1000, 0.5),
+                new BoundedCorrelation(0.5),
+                new BoundedCorrelation(0.7),
+                new BoundedCorrelation(0.5, 0.99),
+                new SimHashCorrelation(0.5),
+                new SimHashCorrelation(0.7),
+                new SimHashCorrelation(0.5, 32, 12, 7L),
+                new SketchedCorrelation(0.5, 0.2, 0.99, 42L),
+                new SketchedCorrelation(0.5, 0.2, 0.9, 42L),
+                new SketchedCorrelation(0.5, 0.1, 0.99, 42L)
+        };
+    }
+
+    private static long entries(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".cmx")).count();
+        }
+    }
+}
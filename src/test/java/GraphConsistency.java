@@ -0,0 +1,393 @@
+import fschmidt.feature.selection.graph.EdgeWeights;
+import fschmidt.feature.selection.graph.GraphFile;
+import fschmidt.feature.selection.graph.GraphStatistics;
+import fschmidt.feature.selection.graph.MappedGraph;
+import fschmidt.feature.selection.graph.UndirectedGraph;
+import fschmidt.feature.selection.graph.WeightedEdge;
+import fschmidt.feature.selection.graph.WeightedVertex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ----------------------------------------------
+//  GRAPH CONSISTENCY.
+// ----------------------------------------------
+// Checks the graph data structures on random
+// graphs: the binary graph file has to reproduce
+// adjacency, names and typed columns of the graph
+// it was written from, after any removal the edge
+// set and the adjacency maps of all vertices have
+// to describe the same graph, and the incremental
+// statistics have to match a recomputation from
+// scratch.
+public class GraphConsistency {
+
+    private static final int VERTICES = 40;
+    private static final long SEED = 42L;
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Graph File Round Trip")
+    void graphFileRoundTrip(@TempDir Path directory) throws IOException {
+        Random random = new Random(SEED);
+        UndirectedGraph graph = randomGraph(random, 0.3);
+        // typed columns, every column misses some values
+        for (WeightedVertex v : graph.getVertices()) {
+            if (random.nextInt(4) > 0) v.addProperty("ranking", random.nextDouble());
+            if (random.nextInt(4) > 0) v.addProperty("size", random.nextFloat());
+            if (random.nextInt(4) > 0) v.addProperty("index", random.nextInt(1000));
+            v.addProperty("label", "not numeric");
+        }
+        for (WeightedEdge e : graph.getEdges()) {
+            if (random.nextInt(4) > 0) e.addProperty("distance", random.nextGaussian());
+            if (random.nextInt(4) > 0) e.addProperty("count", random.nextLong() >>> 1);
+        }
+        EdgeWeights weights = (vertex1, vertex2) -> vertex1.compareTo(vertex2) < 0
+                ? vertex1.hashCode() - vertex2.hashCode() : vertex2.hashCode() - vertex1.hashCode();
+        graph.setEdgeWeights("pearson", weights);
+
+        Path file = directory.resolve("graph.gbfs");
+        GraphFile.write(graph, file);
+        MappedGraph mapped = GraphFile.open(file);
+
+        // dictionary, sorted by name
+        assertEquals(graph.getNumberOfVertices(), mapped.getNumberOfVertices());
+        assertEquals(graph.getNumberOfEdges(), mapped.getNumberOfEdges());
+        for (int v = 0; v < mapped.getNumberOfVertices(); v++) {
+            assertEquals(v, mapped.indexOf(mapped.getVertexName(v)));
+            assertTrue(graph.containsVertex(mapped.getVertexName(v)));
+            if (v > 0) assertTrue(mapped.getVertexName(v - 1).compareTo(mapped.getVertexName(v)) < 0);
+        }
+        assertEquals(-1, mapped.indexOf("unknown"));
+
+        // CSR adjacency, sorted rows, edge ids consistent with the endpoints
+        for (int v = 0; v < mapped.getNumberOfVertices(); v++) {
+            WeightedVertex vertex = graph.getVertex(mapped.getVertexName(v));
+            assertEquals(vertex.getNeighbors().size(), mapped.getDegree(v), vertex.getName());
+            for (int k = 0; k < mapped.getDegree(v); k++) {
+                int neighbor = mapped.getNeighbor(v, k);
+                if (k > 0) assertTrue(mapped.getNeighbor(v, k - 1) < neighbor);
+                assertTrue(vertex.getNeighbors().contains(graph.getVertex(mapped.getVertexName(neighbor))));
+                int edge = mapped.getEdge(v, k);
+                assertEquals(Math.min(v, neighbor), mapped.getEdgeVertex1(edge));
+                assertEquals(Math.max(v, neighbor), mapped.getEdgeVertex2(edge));
+                assertEquals(edge, mapped.getEdgeBetween(v, neighbor));
+                assertEquals(edge, mapped.getEdgeBetween(neighbor, v));
+            }
+            for (int u = 0; u < mapped.getNumberOfVertices(); u++) {
+                boolean adjacent = graph.containsEdge(vertex, graph.getVertex(mapped.getVertexName(u)));
+                assertEquals(adjacent, mapped.getEdgeBetween(v, u) >= 0);
+            }
+        }
+
+        // typed columns, missing values read as NaN; non numeric properties are not stored
+        assertEquals(Set.of("ranking", "size", "index"), mapped.getVertexColumns());
+        assertEquals(Set.of("distance", "count", "pearson"), mapped.getEdgeColumns());
+        for (int v = 0; v < mapped.getNumberOfVertices(); v++) {
+            WeightedVertex vertex = graph.getVertex(mapped.getVertexName(v));
+            for (String column : mapped.getVertexColumns()) {
+                assertEquals(value(vertex.getProperty(column)), mapped.getVertexValue(column, v), column);
+            }
+        }
+        for (int e = 0; e < mapped.getNumberOfEdges(); e++) {
+            WeightedEdge edge = graph.getEdge(graph.getVertex(mapped.getVertexName(mapped.getEdgeVertex1(e))),
+                    graph.getVertex(mapped.getVertexName(mapped.getEdgeVertex2(e))));
+            assertEquals(value(edge.getProperty("distance")), mapped.getEdgeValue("distance", e));
+            assertEquals(value(edge.getProperty("count")), mapped.getEdgeValue("count", e));
+            assertEquals(graph.getWeight(edge, "pearson"), mapped.getEdgeValue("pearson", e));
+        }
+
+        // materialised again: same adjacency, missing values stay missing for every type
+        UndirectedGraph restored = mapped.toUndirectedGraph();
+        assertEquals(edgeNames(graph), edgeNames(restored));
+        for (WeightedVertex vertex : graph.getVertices()) {
+            WeightedVertex copy = restored.getVertex(vertex.getName());
+            assertEquals(vertex.getProperty("ranking"), copy.getProperty("ranking"));
+            assertEquals(vertex.getProperty("size"), copy.getProperty("size"));
+            Object index = vertex.getProperty("index");
+            assertEquals(index == null ? null : ((Integer) index).longValue(), copy.getProperty("index"));
+            assertNull(copy.getProperty("label"));
+        }
+        for (WeightedEdge edge : graph.getEdges()) {
+            WeightedEdge copy = restored.getEdge(restored.getVertex(edge.getVertex1().getName()),
+                    restored.getVertex(edge.getVertex2().getName()));
+            assertEquals(edge.getProperty("distance"), copy.getProperty("distance"));
+            assertEquals(edge.getProperty("count"), copy.getProperty("count"));
+            assertEquals(graph.getWeight(edge, "pearson"), restored.getWeight(copy, "pearson"));
+        }
+
+        // single precision weight columns are stored as float32
+        graph.setEdgeWeights("pearson", new EdgeWeights() {
+            public double getWeight(String vertex1, String vertex2) {
+                return (float) (weights.getWeight(vertex1, vertex2) / 7.0);
+            }
+
+            public boolean isSinglePrecision() {
+                return true;
+            }
+        });
+        // written over the file that is still mapped: the old mapping keeps reading the old values
+        MappedGraph previous = mapped;
+        GraphFile.write(graph, file);
+        mapped = GraphFile.open(file);
+        for (int e = 0; e < mapped.getNumberOfEdges(); e++) {
+            String vertex1 = mapped.getVertexName(mapped.getEdgeVertex1(e));
+            String vertex2 = mapped.getVertexName(mapped.getEdgeVertex2(e));
+            assertEquals((float) (weights.getWeight(vertex1, vertex2) / 7.0), mapped.getEdgeValue("pearson", e));
+            assertEquals(weights.getWeight(vertex1, vertex2), previous.getEdgeValue("pearson", e));
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.collect(Collectors.toList()));
+        }
+        System.out.println(mapped);
+    }
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Removals keep the Adjacency consistent")
+    void removalsKeepAdjacencyConsistent() {
+        Random random = new Random(SEED);
+        UndirectedGraph graph = randomGraph(random, 0.5);
+        assertConsistent(graph);
+
+        // single edges, by edge (also a new instance between the same vertices) and by vertices
+        List<WeightedEdge> edges = new ArrayList<>(graph.getEdges());
+        WeightedEdge edge = edges.get(0);
+        assertTrue(graph.removeEdge(edge));
+        assertTrue(!graph.removeEdge(edge));
+        WeightedEdge other = edges.get(1);
+        assertTrue(graph.removeEdge(new WeightedEdge(other.getVertex2(), other.getVertex1())));
+        WeightedEdge third = edges.get(2);
+        assertSame(third, graph.removeEdge(third.getVertex2(), third.getVertex1()));
+        assertNull(graph.removeEdge(third.getVertex1(), third.getVertex2()));
+        assertConsistent(graph);
+
+        // bulk
+        assertEquals(10, graph.removeEdges(edges.subList(3, 13)));
+        assertEquals(0, graph.removeEdges(edges.subList(0, 13)));
+        assertConsistent(graph);
+        int before = graph.getNumberOfEdges();
+        int removed = graph.removeEdgesIf(e -> e.getVertex1().getName().compareTo(e.getVertex2().getName()) < 0
+                && e.getVertex1().getName().endsWith("3"));
+        assertEquals(before - removed, graph.getNumberOfEdges());
+        assertConsistent(graph);
+
+        // vertices with their incident edges
+        WeightedVertex vertex = graph.getVertex("v07");
+        int degree = vertex.getNeighbors().size();
+        before = graph.getNumberOfEdges();
+        assertTrue(graph.removeVertex(vertex));
+        assertTrue(!graph.removeVertex(vertex));
+        assertEquals(before - degree, graph.getNumberOfEdges());
+        assertTrue(vertex.getNeighbors().isEmpty());
+        assertConsistent(graph);
+        assertEquals(2, graph.removeVertices(List.of(graph.getVertex("v11"), graph.getVertex("v12"), vertex)));
+        assertEquals(4, graph.removeVerticesIf(v -> v.getName().endsWith("5")));
+        assertConsistent(graph);
+
+        // the adjacency is the low-level part of the removal: the edge leaves both maps
+        WeightedEdge last = graph.getEdges().iterator().next();
+        WeightedVertex v1 = last.getVertex1();
+        WeightedVertex v2 = last.getVertex2();
+        assertTrue(graph.removeEdge(last));
+        assertNull(v1.removeEdge(v2));
+        assertNull(v2.removeEdge(v1));
+        assertConsistent(graph);
+
+        // re-adding only works with the vertices of the graph
+        assertThrows(IllegalArgumentException.class, () -> graph.addEdge(vertex, graph.getVertex("v08")));
+        assertThrows(IllegalArgumentException.class, () -> graph.addEdge(new WeightedVertex(v1.getName()), v2));
+        assertThrows(IllegalArgumentException.class, () -> graph.addEdge(v1, new WeightedVertex("unknown")));
+        WeightedEdge readded = graph.addEdge(v2, v1);
+        assertSame(readded, graph.getEdge(v1, v2));
+        assertNull(graph.addEdge(v1, v2));
+        assertConsistent(graph);
+    }
+
+    @Test
+    @Tag("Graph")
+    @DisplayName("Incremental Statistics match a full Recomputation")
+    void incrementalStatisticsMatchRecomputation() {
+        Random random = new Random(SEED);
+        UndirectedGraph graph = randomGraph(random, 0.2);
+        EdgeWeights weights = (vertex1, vertex2) -> (vertex1.hashCode() ^ vertex2.hashCode()) % 17 == 0
+                ? Double.NaN : ((vertex1.hashCode() + vertex2.hashCode()) % 201 - 100) / 100.0;
+        int nextVertex = VERTICES;
+        for (int step = 0; step < 2000; step++) {
+            List<WeightedVertex> vertices = new ArrayList<>(graph.getVerticesMap().values());
+            List<WeightedEdge> edges = new ArrayList<>(graph.getEdges());
+            int operation = random.nextInt(100);
+            if (operation < 5 || vertices.size() < 2) {
+                graph.addVertex(new WeightedVertex(String.format("v%02d", nextVertex++)));
+            } else if (operation < 40) {
+                WeightedVertex v1 = vertices.get(random.nextInt(vertices.size()));
+                WeightedVertex v2 = vertices.get(random.nextInt(vertices.size()));
+                if (v1 != v2) {
+                    WeightedEdge edge = graph.addEdge(v1, v2);
+                    if (edge != null && random.nextBoolean()) edge.addProperty("correlation", random.nextGaussian());
+                }
+            } else if (operation < 60 && !edges.isEmpty()) {
+                graph.removeEdge(edges.get(random.nextInt(edges.size())));
+            } else if (operation < 65) {
+                graph.removeVertex(vertices.get(random.nextInt(vertices.size())));
+            } else if (operation < 95 && !edges.isEmpty()) {
+                // new, changed, NaN and non numeric values, some of them shadowed by the weight column
+                WeightedEdge edge = edges.get(random.nextInt(edges.size()));
+                String key = random.nextBoolean() ? "correlation" : "pearson";
+                int kind = random.nextInt(4);
+                edge.addProperty(key, kind == 0 ? Double.NaN : kind == 1 ? "text" : (Object) random.nextGaussian());
+            } else {
+                graph.setEdgeWeights("pearson", graph.getEdgeWeights().containsKey("pearson") ? null : weights);
+            }
+            assertStatistics(graph, "after step " + step);
+        }
+        System.out.println(graph.getStatistics());
+    }
+
+    // every statistic recomputed from the graph itself
+    private static void assertStatistics(UndirectedGraph graph, String message) {
+        GraphStatistics statistics = graph.getStatistics();
+        int vertices = graph.getNumberOfVertices();
+        int edges = graph.getNumberOfEdges();
+        assertEquals(vertices, statistics.getNumberOfVertices(), message);
+        assertEquals(edges, statistics.getNumberOfEdges(), message);
+        assertEquals(vertices < 2 ? 0.0 : 2.0 * edges / ((double) vertices * (vertices - 1)), statistics.getDensity(), 1e-12, message);
+
+        int[] degrees = graph.getVerticesMap().values().stream().mapToInt(v -> v.getNeighbors().size()).toArray();
+        int maxDegree = Arrays.stream(degrees).max().orElse(0);
+        int[] histogram = new int[maxDegree + 1];
+        for (int degree : degrees) {
+            histogram[degree]++;
+        }
+        assertEquals(maxDegree, statistics.getMaxDegree(), message);
+        assertEquals(Arrays.toString(histogram), Arrays.toString(statistics.getDegreeHistogram()), message);
+        // largest k with at least k + 1 vertices of degree >= k
+        int bound = 0;
+        for (int k = 1; k <= maxDegree; k++) {
+            final int atLeast = k;
+            if (Arrays.stream(degrees).filter(degree -> degree >= atLeast).count() >= k + 1) bound = k;
+        }
+        assertEquals(bound, statistics.getDegeneracyUpperBound(), message);
+        assertEquals(components(graph), statistics.getNumberOfComponents(), message);
+
+        for (String key : List.of("correlation", "pearson")) {
+            long count = 0;
+            long nanCount = 0;
+            double sum = 0.0;
+            double absSum = 0.0;
+            for (WeightedEdge e : graph.getEdges()) {
+                if (!graph.getEdgeWeights().containsKey(key) && !(e.getProperty(key) instanceof Number)) continue;
+                double value = graph.getWeight(e, key);
+                if (Double.isNaN(value)) {
+                    nanCount++;
+                } else {
+                    count++;
+                    sum += value;
+                    absSum += Math.abs(value);
+                }
+            }
+            assertEquals(count, statistics.getCount(key), key + " " + message);
+            assertEquals(nanCount, statistics.getNaNCount(key), key + " " + message);
+            assertEquals(sum, statistics.getSum(key), 1e-9, key + " " + message);
+            assertEquals(absSum, statistics.getAbsSum(key), 1e-9, key + " " + message);
+        }
+    }
+
+    // breadth first search over the adjacency maps
+    private static int components(UndirectedGraph graph) {
+        Set<WeightedVertex> seen = new HashSet<>();
+        int components = 0;
+        for (WeightedVertex start : graph.getVerticesMap().values()) {
+            if (!seen.add(start)) continue;
+            components++;
+            Deque<WeightedVertex> queue = new ArrayDeque<>(List.of(start));
+            while (!queue.isEmpty()) {
+                for (WeightedVertex neighbor : queue.poll().getNeighbors()) {
+                    if (seen.add(neighbor)) queue.add(neighbor);
+                }
+            }
+        }
+        return components;
+    }
+
+    // edge set, adjacency maps and the counts of the statistics describe the same graph
+    private static void assertConsistent(UndirectedGraph graph) {
+        Map<String, WeightedVertex> vertices = graph.getVerticesMap();
+        for (WeightedEdge e : graph.getEdges()) {
+            assertSame(e.getVertex1(), vertices.get(e.getVertex1().getName()), e.toString());
+            assertSame(e.getVertex2(), vertices.get(e.getVertex2().getName()), e.toString());
+            assertSame(e, e.getVertex1().getEdges().get(e.getVertex2()), e.toString());
+            assertSame(e, e.getVertex2().getEdges().get(e.getVertex1()), e.toString());
+        }
+        int degrees = 0;
+        for (WeightedVertex v : vertices.values()) {
+            for (Map.Entry<WeightedVertex, WeightedEdge> adjacent : v.getEdges().entrySet()) {
+                assertSame(adjacent.getKey(), vertices.get(adjacent.getKey().getName()), v.getName());
+                assertTrue(graph.getEdges().contains(adjacent.getValue()), v.getName());
+                assertEquals(Set.of(v, adjacent.getKey()),
+                        Set.of(adjacent.getValue().getVertex1(), adjacent.getValue().getVertex2()), v.getName());
+                assertSame(adjacent.getValue(), graph.getEdge(v, adjacent.getKey()), v.getName());
+            }
+            degrees += v.getNeighbors().size();
+        }
+        assertEquals(2 * graph.getNumberOfEdges(), degrees);
+        assertEquals(graph.getNumberOfEdges(), graph.getStatistics().getNumberOfEdges());
+        assertEquals(graph.getNumberOfVertices(), graph.getStatistics().getNumberOfVertices());
+    }
+
+    // G(n, p) with names v00, v01, ...
+    private static UndirectedGraph randomGraph(Random random, double p) {
+        UndirectedGraph graph = new UndirectedGraph();
+        for (int v = 0; v < VERTICES; v++) {
+            graph.addVertex(new WeightedVertex(String.format("v%02d", v)));
+        }
+        for (int v = 0; v < VERTICES; v++) {
+            for (int u = v + 1; u < VERTICES; u++) {
+                if (random.nextDouble() < p) {
+                    // both orientations of the endpoints
+                    WeightedVertex a = graph.getVertex(String.format("v%02d", v));
+                    WeightedVertex b = graph.getVertex(String.format("v%02d", u));
+                    if (random.nextBoolean()) {
+                        graph.addEdge(a, b);
+                    } else {
+                        graph.addEdge(b, a);
+                    }
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static double value(Object property) {
+        return property instanceof Number ? ((Number) property).doubleValue() : Double.NaN;
+    }
+
+    private static Set<Set<String>> edgeNames(UndirectedGraph graph) {
+        Set<Set<String>> edges = new HashSet<>();
+        for (WeightedEdge e : graph.getEdges()) {
+            edges.add(Set.of(e.getVertex1().getName(), e.getVertex2().getName()));
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,143 @@
+package fschmidt.feature.selection;
+
+import fschmidt.feature.selection.ranking.DistancesUtils;
+import jdk.incubator.vector.DoubleVector;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ----------------------------------------------
+//  VECTOR KERNEL CONSISTENCY.
+// ----------------------------------------------
+// Runs on JDK 21 with --add-modules
+// jdk.incubator.vector (gradle vectorKernelTest)
+// and compares every SIMD kernel with its scalar
+// loop, directly and through Kernels and
+// DistancesUtils. Lengths cover empty input, less
+// than one vector, multiples of the vector width
+// and every tail in between. Lanes are summed in
+// another order, so the results only have to agree
+// up to rounding relative to the summed magnitudes.
+//
+// @author fschmidt
+//
+public class VectorKernelConsistency {
+
+    private static final double TOLERANCE = 1e-12;
+    private static final int WIDTH = DoubleVector.SPECIES_PREFERRED.length();
+
+    @Test
+    @Tag("Kernels")
+    @DisplayName("Vector Kernels are linked")
+    void vectorKernelsAreLinked() {
+        assertTrue(Kernels.isVectorized(), "run with --add-modules jdk.incubator.vector");
+    }
+
+    @Test
+    @Tag("Kernels")
+    @DisplayName("Vector Kernels against Scalar Kernels")
+    void vectorKernelsAgainstScalarKernels() {
+        var random = new Random(42L);
+        for (int length : lengths()) {
+            double[] a = random.doubles(length, -10.0, 10.0).toArray();
+            double[] b = random.doubles(length, -10.0, 10.0).toArray();
+            String at = "length " + length + ", vector width " + WIDTH;
+
+            double scale = ScalarKernels.dot(abs(a), abs(b), 0, length);
+            assertClose(ScalarKernels.dot(a, b, 0, length), VectorKernels.dot(a, b, 0, length), scale, at);
+            assertClose(ScalarKernels.dot(a, b, 0, length), Kernels.dot(a, b), scale, at);
+            // offset ranges, the vector loop starts at from and not at 0
+            for (int from = 1; from <= Math.min(WIDTH + 1, length); from++) {
+                assertClose(ScalarKernels.dot(a, b, from, length), VectorKernels.dot(a, b, from, length), scale, at + ", from " + from);
+            }
+
+            double[] scalarMoments = ScalarKernels.moments(a, b);
+            double[] vectorMoments = VectorKernels.moments(a, b);
+            double[] momentScales = ScalarKernels.moments(abs(a), abs(b));
+            for (int m = 0; m < scalarMoments.length; m++) {
+                assertClose(scalarMoments[m], vectorMoments[m], momentScales[m], at + ", moment " + m);
+            }
+
+            assertClose(ScalarKernels.absoluteDifferenceSum(a, b), VectorKernels.absoluteDifferenceSum(a, b),
+                    ScalarKernels.absoluteDifferenceSum(a, b), at);
+            assertClose(ScalarKernels.squaredDifferenceSum(a, b), VectorKernels.squaredDifferenceSum(a, b),
+                    ScalarKernels.squaredDifferenceSum(a, b), at);
+        }
+    }
+
+    @Test
+    @Tag("Kernels")
+    @DisplayName("Vectorised Distances against Scalar Kernels")
+    void vectorisedDistancesAgainstScalarKernels() {
+        var random = new Random(42L);
+        for (int length : lengths()) {
+            double[] a = random.doubles(length, -10.0, 10.0).toArray();
+            double[] b = random.doubles(length, -10.0, 10.0).toArray();
+            // histograms with empty bins, relative entropy skips them
+            double[] p = histogram(random, length);
+            double[] q = histogram(random, length);
+            String at = "length " + length + ", vector width " + WIDTH;
+
+            assertClose(ScalarKernels.absoluteDifferenceSum(a, b), DistancesUtils.hamming(a, b),
+                    ScalarKernels.absoluteDifferenceSum(a, b), at);
+            assertClose(Math.sqrt(ScalarKernels.squaredDifferenceSum(a, b)), DistancesUtils.euclidean(a, b),
+                    Math.sqrt(ScalarKernels.squaredDifferenceSum(a, b)), at);
+            assertClose(ScalarKernels.sqrtProductSum(p, q), VectorKernels.sqrtProductSum(p, q),
+                    ScalarKernels.sqrtProductSum(p, q), at);
+            assertClose(ScalarKernels.sqrtProductSum(p, q), DistancesUtils.bhattacharyya(p, q),
+                    ScalarKernels.sqrtProductSum(p, q), at);
+
+            double entropyScale = 0.0;
+            for (int s = 0; s < length; s++) {
+                if (p[s] != 0 && q[s] != 0) {
+                    entropyScale += Math.abs(p[s] * Math.log(p[s] / q[s]));
+                }
+            }
+            assertClose(ScalarKernels.relativeEntropy(p, q), VectorKernels.relativeEntropy(p, q), entropyScale, at);
+            assertClose(ScalarKernels.relativeEntropy(p, q) / Math.log(2), DistancesUtils.kullbackLeibler(p, q),
+                    entropyScale / Math.log(2), at);
+        }
+    }
+
+    // 0 .. 3 vectors and every tail, then some longer ones that are not a multiple of the width
+    private static int[] lengths() {
+        int[] lengths = new int[3 * WIDTH + 2 + 3];
+        for (int length = 0; length <= 3 * WIDTH + 1; length++) {
+            lengths[length] = length;
+        }
+        lengths[3 * WIDTH + 2] = 1000;
+        lengths[3 * WIDTH + 3] = 1021;
+        lengths[3 * WIDTH + 4] = 4099;
+        return lengths;
+    }
+
+    private static double[] histogram(Random random, int length) {
+        double[] histogram = new double[length];
+        double total = 0.0;
+        for (int s = 0; s < length; s++) {
+            histogram[s] = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+            total += histogram[s];
+        }
+        for (int s = 0; s < length && total > 0.0; s++) {
+            histogram[s] /= total;
+        }
+        return histogram;
+    }
+
+    private static double[] abs(double[] x) {
+        double[] abs = new double[x.length];
+        for (int s = 0; s < x.length; s++) {
+            abs[s] = Math.abs(x[s]);
+        }
+        return abs;
+    }
+
+    private static void assertClose(double expected, double actual, double scale, String message) {
+        assertEquals(expected, actual, TOLERANCE * Math.max(1.0, scale), message);
+    }
+}